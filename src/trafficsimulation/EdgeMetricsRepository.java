@@ -0,0 +1,236 @@
+package trafficsimulation;
+
+import de.tudresden.sumo.cmd.Edge;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoPrimitive;
+import de.tudresden.sumo.objects.SumoStringList;
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import de.tudresden.sumo.subscription.VariableSubscription;
+import de.tudresden.sumo.util.Observable;
+import de.tudresden.sumo.util.Observer;
+import it.polito.appeal.traci.SumoTraciConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Traffic metrics per edge (mean speed, vehicle count, halting count, CO2) for congestion monitoring.
+ * SUMO aggregates these itself and pushes them through one subscription per edge, so the
+ * cost depends on the number of edges, not on the number of vehicles.
+ *
+ * The per-edge arrays belong to the simulation thread. The ranking of the most congested
+ * edges is rebuilt once per step and published as an immutable object for other threads.
+ */
+public class EdgeMetricsRepository implements Observer {
+
+    private static final Logger logger = LogManager.getLogger(EdgeMetricsRepository.class);
+
+    // Subscriptions stay active for the whole run
+    private static final double SUBSCRIPTION_END = Double.MAX_VALUE;
+
+    // Number of edges kept in the per-step ranking
+    public static final int DEFAULT_TOP_K = 5;
+
+    // Variables pushed by SUMO for every edge (aggregated over the last step)
+    private static final int[] EDGE_VARIABLES = {
+            Constants.LAST_STEP_MEAN_SPEED,
+            Constants.LAST_STEP_VEHICLE_NUMBER,
+            Constants.LAST_STEP_VEHICLE_HALTING_NUMBER,
+            Constants.VAR_CO2EMISSION
+    };
+
+    // --- Fields ---
+    private SumoTraciConnection conn;
+    private final String[] edgeIds;
+    private final Map<String, Integer> indexById = new HashMap<>();
+
+    // --- Metrics (indexed like edgeIds, simulation thread only) ---
+    private final double[] meanSpeed;
+    private final int[] vehicleCount;
+    private final int[] haltingCount;
+    private final double[] co2;
+
+    private final int topK;
+    private final int[] top; // Scratch buffer for the ranking
+    private volatile Ranking ranking = Ranking.EMPTY;
+
+    // --- Constructor ---
+    public EdgeMetricsRepository(SumoTraciConnection conn, NetworkModel network) {
+        this(conn, network, DEFAULT_TOP_K);
+    }
+
+    /**
+     * @param network source of the edge IDs; if null they are fetched from SUMO
+     * @param topK    number of edges in the congestion ranking
+     */
+    public EdgeMetricsRepository(SumoTraciConnection conn, NetworkModel network, int topK) {
+        this.conn = conn;
+        this.edgeIds = network != null ? network.getEdgeIds() : fetchEdgeIds(conn);
+        this.meanSpeed = new double[edgeIds.length];
+        this.vehicleCount = new int[edgeIds.length];
+        this.haltingCount = new int[edgeIds.length];
+        this.co2 = new double[edgeIds.length];
+        this.topK = Math.max(1, topK);
+        this.top = new int[this.topK];
+
+        for (int e = 0; e < edgeIds.length; e++) {
+            indexById.put(edgeIds[e], e);
+        }
+        subscribeEdges();
+    }
+
+    private static String[] fetchEdgeIds(SumoTraciConnection conn) {
+        List<String> ids = new ArrayList<>();
+        try {
+            for (String id : (SumoStringList) conn.do_job_get(Edge.getIDList())) {
+                if (!id.startsWith(":")) ids.add(id); // Skip internal junction edges
+            }
+        } catch (Exception e) {
+            logger.error("Error loading edge IDs:", e);
+        }
+        return ids.toArray(new String[0]);
+    }
+
+    private void subscribeEdges() {
+        conn.addObserver(this);
+        try {
+            // One round trip per edge, but only once per run; afterwards SUMO pushes the values
+            for (String id : edgeIds) {
+                VariableSubscription vs = new VariableSubscription(
+                        SubscribtionVariable.edge, 0, SUBSCRIPTION_END, id);
+                for (int variable : EDGE_VARIABLES) {
+                    vs.addCommand(variable);
+                }
+                conn.do_subscription(vs);
+            }
+            logger.info("Subscribed to metrics of {} edges.", edgeIds.length);
+        } catch (Exception e) {
+            logger.error("Failed to subscribe to edge metrics", e);
+        }
+    }
+
+    /**
+     * Receives the subscribed edge variables while SUMO processes a time step.
+     */
+    @Override
+    public void update(Observable observable, SubscriptionObject so) {
+        if (so.response != ResponseType.EDGE_VARIABLE || so.object == null) return;
+
+        Integer edge = indexById.get(so.id);
+        if (edge == null) return;
+
+        Object value = ((SumoPrimitive) so.object).val;
+        switch (so.variable) {
+            case Constants.LAST_STEP_MEAN_SPEED:
+                meanSpeed[edge] = (Double) value;
+                break;
+            case Constants.LAST_STEP_VEHICLE_NUMBER:
+                vehicleCount[edge] = (Integer) value;
+                break;
+            case Constants.LAST_STEP_VEHICLE_HALTING_NUMBER:
+                haltingCount[edge] = (Integer) value;
+                break;
+            case Constants.VAR_CO2EMISSION:
+                co2[edge] = Math.max(0.0, (Double) value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Rebuilds the congestion ranking from the values of the last step.
+     * Should be called at every simulation step (after do_timestep).
+     */
+    public void updateMetrics() {
+        // 1. Keep the K worst edges in a small sorted buffer (O(edges * K), no allocation)
+        int n = 0;
+        for (int e = 0; e < edgeIds.length; e++) {
+            if (vehicleCount[e] == 0) continue;
+            if (n == topK && !isMoreCongested(e, top[n - 1])) continue;
+
+            int pos = n < topK ? n++ : n - 1;
+            while (pos > 0 && isMoreCongested(e, top[pos - 1])) {
+                top[pos] = top[pos - 1];
+                pos--;
+            }
+            top[pos] = e;
+        }
+
+        // 2. Publish an immutable copy for the views
+        String[] ids = new String[n];
+        int[] halting = new int[n];
+        int[] vehicles = new int[n];
+        double[] speeds = new double[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = edgeIds[top[i]];
+            halting[i] = haltingCount[top[i]];
+            vehicles[i] = vehicleCount[top[i]];
+            speeds[i] = meanSpeed[top[i]];
+        }
+        ranking = new Ranking(ids, halting, vehicles, speeds);
+    }
+
+    // Congestion = more halting vehicles; on a tie, the slower edge
+    private boolean isMoreCongested(int a, int b) {
+        if (haltingCount[a] != haltingCount[b]) return haltingCount[a] > haltingCount[b];
+        return meanSpeed[a] < meanSpeed[b];
+    }
+
+    // --- Getters ---
+
+    /**
+     * The most congested edges of the last step, most congested first. Safe from any thread.
+     */
+    public Ranking getTopCongested() {
+        return ranking;
+    }
+
+    public int getEdgeCount() { return edgeIds.length; }
+    public String getEdgeId(int edge) { return edgeIds[edge]; }
+
+    /**
+     * Returns the index of an edge, or -1 if it is not tracked.
+     */
+    public int findEdge(String id) {
+        Integer edge = indexById.get(id);
+        return edge == null ? -1 : edge;
+    }
+
+    // Per-edge values of the last step (simulation thread)
+    public double getMeanSpeed(int edge) { return meanSpeed[edge]; }
+    public int getVehicleCount(int edge) { return vehicleCount[edge]; }
+    public int getHaltingCount(int edge) { return haltingCount[edge]; }
+    public double getCo2(int edge) { return co2[edge]; }
+
+    /**
+     * Immutable top-K list of one step; index i describes the same edge in every array.
+     */
+    public static final class Ranking {
+        static final Ranking EMPTY = new Ranking(new String[0], new int[0], new int[0], new double[0]);
+
+        private final String[] edgeIds;
+        private final int[] haltingCount;
+        private final int[] vehicleCount;
+        private final double[] meanSpeed;
+
+        private Ranking(String[] edgeIds, int[] haltingCount, int[] vehicleCount, double[] meanSpeed) {
+            this.edgeIds = edgeIds;
+            this.haltingCount = haltingCount;
+            this.vehicleCount = vehicleCount;
+            this.meanSpeed = meanSpeed;
+        }
+
+        public int size() { return edgeIds.length; }
+        public String getEdgeId(int i) { return edgeIds[i]; }
+        public int getHaltingCount(int i) { return haltingCount[i]; }
+        public int getVehicleCount(int i) { return vehicleCount[i]; }
+        public double getMeanSpeed(int i) { return meanSpeed[i]; }
+    }
+}
@@ -0,0 +1,95 @@
+package trafficsimulation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CO2 emissions of one simulation step: the total plus breakdowns by edge and by vehicle type.
+ * Computed exactly once per step, from the CO2 values the vehicle subscriptions already
+ * delivered, while the snapshot is built. Everything that shows or exports emissions
+ * reads this result instead of summing the vehicles again.
+ *
+ * All values are in mg/s. Immutable.
+ */
+public final class EmissionsAggregator {
+
+    public static final EmissionsAggregator EMPTY =
+            new EmissionsAggregator(new double[0], new int[0], new String[0], new String[0], new String[0]);
+
+    private final double total;
+    private final double[] byEdge;          // Indexed like the snapshot's edge dictionary
+    private final String[] edgeNames;
+    private final Map<String, Double> byType; // Unmodifiable, in order of first appearance
+
+    /**
+     * Aggregates the vehicle columns of a snapshot in a single pass.
+     */
+    EmissionsAggregator(double[] co2, int[] edgeIndex, String[] edgeNames, String[] imageNames, String[] ids) {
+        this.edgeNames = edgeNames;
+
+        // 1. Size the edge array by the highest edge in use
+        int maxEdge = -1;
+        for (int edge : edgeIndex) maxEdge = Math.max(maxEdge, edge);
+        this.byEdge = new double[maxEdge + 1];
+
+        // 2. One pass over all vehicles (types are few, so a small map is enough)
+        Map<String, double[]> typeSums = new LinkedHashMap<>();
+        double sum = 0.0;
+        for (int i = 0; i < ids.length; i++) {
+            double value = co2[i];
+            sum += value;
+            if (edgeIndex[i] >= 0) byEdge[edgeIndex[i]] += value;
+            if (imageNames[i] != null) typeSums.computeIfAbsent(imageNames[i], k -> new double[1])[0] += value;
+        }
+        this.total = sum;
+
+        Map<String, Double> types = new LinkedHashMap<>();
+        typeSums.forEach((type, value) -> types.put(type, value[0]));
+        this.byType = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Total CO2 emission of all vehicles in the step.
+     */
+    public double getTotal() { return total; }
+
+    /**
+     * CO2 emission on an edge, by index into the snapshot's edge dictionary.
+     */
+    public double getEdgeCo2(int edgeIndex) {
+        return edgeIndex >= 0 && edgeIndex < byEdge.length ? byEdge[edgeIndex] : 0.0;
+    }
+
+    /**
+     * CO2 emission on an edge, by edge ID (linear lookup; use the index variant in loops).
+     */
+    public double getEdgeCo2(String edge) {
+        for (int e = 0; e < byEdge.length; e++) {
+            if (edgeNames[e].equals(edge)) return byEdge[e];
+        }
+        return 0.0;
+    }
+
+    /**
+     * Returns the edge IDs with the highest emissions, highest first.
+     */
+    public String[] getTopEdges(int k) {
+        Integer[] order = new Integer[byEdge.length];
+        int n = 0;
+        for (int e = 0; e < byEdge.length; e++) {
+            if (byEdge[e] > 0) order[n++] = e;
+        }
+        Arrays.sort(order, 0, n, (a, b) -> Double.compare(byEdge[b], byEdge[a]));
+
+        String[] top = new String[Math.min(k, n)];
+        for (int i = 0; i < top.length; i++) top[i] = edgeNames[order[i]];
+        return top;
+    }
+
+    /**
+     * CO2 emission per vehicle type (image name), unmodifiable.
+     */
+    public Map<String, Double> getByType() { return byType; }
+}
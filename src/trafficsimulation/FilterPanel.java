@@ -1,20 +1,33 @@
 package trafficsimulation;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
- * Simple Filter-Panel for Vehicle Type and Street
+ * Simple Filter-Panel for Vehicle Type and Street.
+ *
+ * Both lists are JLists with a checkbox renderer, so only the visible rows are ever
+ * painted, no matter how many edges the network has. The models are updated with the
+ * keys that appeared or disappeared since the last update (reported by the filter),
+ * each applied as a single list event instead of rebuilding the panel.
  */
 public class FilterPanel extends JPanel {
 
     private VehicleFilter filter;
     private GuiController controller;
-    private Map<String, JCheckBox> typeBoxes = new HashMap<>();
-    private Map<String, JCheckBox> edgeBoxes = new HashMap<>();
-    private JPanel typePanel;
-    private JPanel edgePanel;
+    private CheckList typeList;
+    private CheckList edgeList;
+    private JTextField queryField;
 
     public FilterPanel(VehicleFilter filter, GuiController controller) {
         this.filter = filter;
@@ -29,108 +42,215 @@ public class FilterPanel extends JPanel {
         clear.addActionListener(e -> reset());
         add(clear);
 
+        // Query section (applied on Enter)
+        add(new JLabel("Query:"));
+        queryField = new JTextField();
+        queryField.setToolTipText("e.g. speed < 2 and bbox 0,0,500,500 | co2 > 5000 and edge ^= gneE");
+        queryField.setMaximumSize(new Dimension(Integer.MAX_VALUE, queryField.getPreferredSize().height));
+        queryField.addActionListener(e -> applyQuery());
+        add(queryField);
+
         // Vehicle type section
         add(new JLabel("Vehicle type:"));
-        typePanel = new JPanel();
-        typePanel.setLayout(new BoxLayout(typePanel, BoxLayout.Y_AXIS));
-        add(new JScrollPane(typePanel));
+        typeList = new CheckList(filter::drainChangedTypes, filter::hasType, filter::isTypeSelected,
+                (type, selected) -> {
+                    if (selected) filter.addType(type);
+                    else filter.removeType(type);
+                });
+        add(typeList);
 
         // Street section
         add(new JLabel("Street:"));
-        edgePanel = new JPanel();
-        edgePanel.setLayout(new BoxLayout(edgePanel, BoxLayout.Y_AXIS));
-        add(new JScrollPane(edgePanel));
+        edgeList = new CheckList(filter::drainChangedEdges, filter::hasEdge, filter::isEdgeSelected,
+                (edge, selected) -> {
+                    if (selected) filter.addEdge(edge);
+                    else filter.removeEdge(edge);
+                });
+        add(edgeList);
 
         update();
     }
 
+    /**
+     * Applies the types and edges that appeared or disappeared since the last call.
+     */
     public void update() {
-        updateTypes();
-        updateEdges();
+        typeList.applyChanges();
+        edgeList.applyChanges();
     }
 
-    private void updateTypes() {
-        java.util.List<String> types = filter.getAllTypes();
-
-        // Remove old types
-        java.util.List<String> toRemove = new ArrayList<>();
-        for (String key : typeBoxes.keySet()) {
-            if (!types.contains(key)) {
-                toRemove.add(key);
-            }
+    private void applyQuery() {
+        String text = queryField.getText().trim();
+        try {
+            filter.setQuery(text.isEmpty() ? null : VehicleQuery.parse(text));
+            queryField.setBackground(UIManager.getColor("TextField.background"));
+            queryField.setToolTipText(null);
+        } catch (IllegalArgumentException ex) {
+            queryField.setBackground(new Color(255, 200, 200));
+            queryField.setToolTipText(ex.getMessage());
         }
-        for (String key : toRemove) {
-            JCheckBox box = typeBoxes.remove(key);
-            typePanel.remove(box);
+        controller.refreshMap();
+    }
+
+    private void reset() {
+        filter.clear();
+        queryField.setText("");
+        queryField.setBackground(UIManager.getColor("TextField.background"));
+        typeList.repaint();
+        edgeList.repaint();
+        controller.refreshMap();
+    }
+
+    /**
+     * Search box plus virtualized checkbox list over a sorted set of keys.
+     */
+    private class CheckList extends JPanel {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Supplier<Set<String>> changes;
+        private final Predicate<String> present;
+        private final Predicate<String> selected;
+        private final BiConsumer<String, Boolean> setSelected;
+
+        private final KeyListModel model = new KeyListModel();
+        private final JList<String> list = new JList<>(model);
+        private final JTextField search = new JTextField();
+
+        CheckList(Supplier<Set<String>> changes, Predicate<String> present,
+                  Predicate<String> selected, BiConsumer<String, Boolean> setSelected) {
+            this.changes = changes;
+            this.present = present;
+            this.selected = selected;
+            this.setSelected = setSelected;
+
+            setLayout(new BorderLayout());
+            search.setToolTipText("Search");
+            search.getDocument().addDocumentListener(new DocumentListener() {
+                @Override public void insertUpdate(DocumentEvent e) { model.setQuery(search.getText()); }
+                @Override public void removeUpdate(DocumentEvent e) { model.setQuery(search.getText()); }
+                @Override public void changedUpdate(DocumentEvent e) { model.setQuery(search.getText()); }
+            });
+
+            // Fixed row height: JList then never measures rows it does not show
+            list.setCellRenderer(new CheckBoxRenderer());
+            list.setFixedCellHeight(new JCheckBox("X").getPreferredSize().height);
+            list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+            list.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    int index = list.locationToIndex(e.getPoint());
+                    if (index >= 0 && list.getCellBounds(index, index).contains(e.getPoint())) toggle(index);
+                }
+            });
+            list.addKeyListener(new KeyAdapter() {
+                @Override
+                public void keyPressed(KeyEvent e) {
+                    if (e.getKeyCode() == KeyEvent.VK_SPACE && list.getSelectedIndex() >= 0) toggle(list.getSelectedIndex());
+                }
+            });
+
+            add(search, BorderLayout.NORTH);
+            add(new JScrollPane(list), BorderLayout.CENTER);
         }
 
-        // Add new types
-        for (String type : types) {
-            if (!typeBoxes.containsKey(type)) {
-                JCheckBox box = new JCheckBox(type);
-                box.addActionListener(e -> {
-                    if (box.isSelected()) {
-                        filter.addType(type);
-                    } else {
-                        filter.removeType(type);
-                    }
-                    controller.refreshMap();
-                });
-                typeBoxes.put(type, box);
-                typePanel.add(box);
+        void applyChanges() {
+            Set<String> changed = changes.get();
+            if (changed.size() <= KeyListModel.BULK_THRESHOLD) {
+                for (String key : changed) {
+                    if (present.test(key)) model.add(key);
+                    else model.remove(key);
+                }
+                return;
             }
+
+            // Large batches (first fill, stress tests): update the keys, then one event
+            for (String key : changed) {
+                if (present.test(key)) model.all.add(key);
+                else model.all.remove(key);
+            }
+            model.refresh();
         }
 
-        typePanel.revalidate();
-        typePanel.repaint();
-    }
+        private void toggle(int index) {
+            String key = model.getElementAt(index);
+            setSelected.accept(key, !selected.test(key));
+            list.repaint(list.getCellBounds(index, index));
+            controller.refreshMap();
+        }
 
-    private void updateEdges() {
-        java.util.List<String> edges = filter.getAllEdges();
+        private class CheckBoxRenderer extends JCheckBox implements ListCellRenderer<String> {
+            private static final long serialVersionUID = 1L;
 
-        // Remove old edges
-        java.util.List<String> toRemove = new ArrayList<>();
-        for (String key : edgeBoxes.keySet()) {
-            if (!edges.contains(key)) {
-                toRemove.add(key);
+            @Override
+            public Component getListCellRendererComponent(JList<? extends String> list, String key,
+                                                          int index, boolean isSelected, boolean cellHasFocus) {
+                setText(key.length() > 20 ? key.substring(0, 17) + "..." : key);
+                setToolTipText(key);
+                setSelected(selected.test(key));
+                setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+                setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+                return this;
             }
         }
-        for (String key : toRemove) {
-            JCheckBox box = edgeBoxes.remove(key);
-            edgePanel.remove(box);
+    }
+
+    /**
+     * Sorted keys with a search filter. Every change fires one interval event for
+     * exactly the rows affected, so the JList never has to re-layout everything.
+     */
+    private static class KeyListModel extends AbstractListModel<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        // More changes than this are applied as one refresh instead of single events
+        static final int BULK_THRESHOLD = 32;
+
+        private final TreeSet<String> all = new TreeSet<>();
+        private final ArrayList<String> visible = new ArrayList<>(); // Sorted, matches the query
+        private String query = "";
+
+        void add(String key) {
+            if (!all.add(key) || !matches(key)) return;
+            int index = -Collections.binarySearch(visible, key) - 1;
+            visible.add(index, key);
+            fireIntervalAdded(this, index, index);
         }
 
-        // Add new edges
-        for (String edge : edges) {
-            if (!edgeBoxes.containsKey(edge)) {
-                String display = edge.length() > 20 ? edge.substring(0, 17) + "..." : edge;
-                JCheckBox box = new JCheckBox(display);
-                box.setToolTipText(edge);
-                box.addActionListener(e -> {
-                    if (box.isSelected()) {
-                        filter.addEdge(edge);
-                    } else {
-                        filter.removeEdge(edge);
-                    }
-                    controller.refreshMap();
-                });
-                edgeBoxes.put(edge, box);
-                edgePanel.add(box);
-            }
+        void remove(String key) {
+            if (!all.remove(key)) return;
+            int index = Collections.binarySearch(visible, key);
+            if (index < 0) return;
+            visible.remove(index);
+            fireIntervalRemoved(this, index, index);
         }
 
-        edgePanel.revalidate();
-        edgePanel.repaint();
-    }
+        void setQuery(String text) {
+            String newQuery = text.trim().toLowerCase();
+            if (newQuery.equals(query)) return;
+            query = newQuery;
+            refresh();
+        }
 
-    private void reset() {
-        filter.clear();
-        for (JCheckBox box : typeBoxes.values()) {
-            box.setSelected(false);
+        // Rebuilds the visible rows from all keys
+        void refresh() {
+            int oldSize = visible.size();
+            visible.clear();
+            for (String key : all) {
+                if (matches(key)) visible.add(key);
+            }
+            if (oldSize > 0) fireIntervalRemoved(this, 0, oldSize - 1);
+            if (!visible.isEmpty()) fireIntervalAdded(this, 0, visible.size() - 1);
         }
-        for (JCheckBox box : edgeBoxes.values()) {
-            box.setSelected(false);
+
+        private boolean matches(String key) {
+            return query.isEmpty() || key.toLowerCase().contains(query);
         }
-        controller.refreshMap();
+
+        @Override
+        public int getSize() { return visible.size(); }
+
+        @Override
+        public String getElementAt(int index) { return visible.get(index); }
     }
-}
\ No newline at end of file
+}
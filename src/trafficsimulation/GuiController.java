@@ -8,7 +8,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import javax.swing.SwingUtilities;
 
-import java.util.List;
 
 public class GuiController {
     
@@ -20,6 +19,12 @@ public class GuiController {
     private VehicleFilter filter;
     private FilterPanel filterPanel;
 
+    // --- Rendering ---
+    private static final long FILTER_REFRESH_NANOS = 500_000_000L;
+    private final RenderScheduler renderScheduler = new RenderScheduler(RenderScheduler.DEFAULT_FPS, this::renderFrame);
+    private SimulationSnapshot lastRendered;
+    private long lastFilterRefresh;
+
     public GuiController(MainFrame view, SimulationManager manager) {
         this.view = view;
         this.manager = manager;
@@ -27,64 +32,66 @@ public class GuiController {
     }
 
     /**
-     * Updates the statistics panel with the latest simulation data.
-     * This method must never be called directly from the Swing EDT.
+     * Renders one frame with the latest published snapshot.
+     * Runs on the EDT, called by the render scheduler at most FPS times per second.
+     */
+    private void renderFrame() {
+        SimulationSnapshot snap = manager.getSnapshot();
+        if (snap != lastRendered) {
+            lastRendered = snap;
+            updateStatistics(snap);
+
+            // The filter lists change slowly and are costly to rebuild, refresh them less often
+            long now = System.nanoTime();
+            if (filterPanel != null && now - lastFilterRefresh >= FILTER_REFRESH_NANOS) {
+                lastFilterRefresh = now;
+                filterPanel.update();
+            }
+        }
+        view.getMapPanel().repaint();
+    }
+
+    /**
+     * Updates the statistics panel with the data of one step. Runs on the EDT.
      */
-    private void updateStatistics() {
+    private void updateStatistics(SimulationSnapshot snap) {
 
         // Safety check: statistics panel might not exist yet
         if (view.getStatisticsPanel() == null) {
             return;
         }
 
-        // Get data
-        int vehicleCount = manager.getActiveVehicleCount();
-        double co2 = manager.getCurrentCo2Emission();
-        int step= manager.getStepCounter();
-
-        // Update Swing components on the Event Dispatch Thread
-        SwingUtilities.invokeLater(() -> {
-            view.getStatisticsPanel().setVehicleCount(vehicleCount);
-            view.getStatisticsPanel().addCo2Value(step, co2);
-        });
+        // Frozen state of the step, no TraCI calls
+        view.getStatisticsPanel().update(snap);
+        view.getStatisticsPanel().setStepRate(manager.getDriver().getMeasuredStepsPerSecond());
+        EdgeMetricsRepository edges = manager.getEdgeMetricsRepository();
+        if (edges != null) {
+            view.getStatisticsPanel().setCongestion(edges.getTopCongested());
+        }
     }
 
 
     private void initController() {
-        manager.addListener(() -> {
-            if (filterPanel != null) {
-                filterPanel.update();
-            }
-            view.getMapPanel().repaint();
-        });
+        SimulationDriver driver = manager.getDriver();
+
+        // Called after every step (driver thread, or consumer thread when pipelined).
+        // Only marks the view dirty; the render scheduler draws the latest snapshot.
+        manager.addListener(snap -> renderScheduler.markDirty());
+        renderScheduler.setAnimation(view.getMapPanel()::isAnimating);
+        renderScheduler.start();
 
         // --- 1. START BUTTON ---
         view.getStartButton().addActionListener(e -> {
             logger.info("START clicked.");
-            manager.startSimulation();
-
-            // Setup filter panel once repository is available
-            if (filter == null) {
-                VehicleRepository repo = manager.getRepository();
-                setupFilter(repo);
-                FilterPanel fp = getFilterPanel();
-                view.setFilterPanel(fp);
-                if (filterPanel != null) {
-                    filterPanel.update();
-                }
-            }
 
-            // Populate list immediately after start finishes
-            if (manager.getLightRepository() != null) {
-                view.getLightSelector().removeAllItems();
-                
-                for (TrafficLightWrap tl : manager.getLightRepository().getList()) {
-                    view.getLightSelector().addItem(tl.getID());
-                }
-                logger.info("Traffic Lights loaded into menu.");
-            } else {
-                logger.warn("No Traffic Light Repository found yet.");
-            }
+            // The map is parsed from the net file and shown while SUMO is still starting
+            manager.loadNetworkAsync().thenRun(renderScheduler::markDirty);
+
+            // Launching SUMO happens on the driver thread
+            driver.submit(() -> {
+                manager.startSimulation();
+                SwingUtilities.invokeLater(this::onSimulationStarted);
+            });
         });
 
         // --- 2. SWITCH BUTTON ---
@@ -92,42 +99,45 @@ public class GuiController {
             String selectedId = (String) view.getLightSelector().getSelectedItem();
             
             if (selectedId != null && manager.getLightRepository() != null) {
-                for (TrafficLightWrap tl : manager.getLightRepository().getList()) {
-                    if (tl.getID().equals(selectedId)) {
-                        logger.info("Switching Light: {}", selectedId);
-                        
-                        // 1. Switch the light logic
-                        tl.switchToNextPhase(); 
-                       
-                        
-                        //Repaint to try and show color update
-                        view.getMapPanel().repaint();
-                        break;
-                    }
-                }
+                logger.info("Switching Light: {}", selectedId);
+                
+                // 1. Switch the light logic
+                driver.submit(() -> {
+                    manager.switchLight(selectedId);
+                    
+                    // Show the color update with the next frame
+                    renderScheduler.markDirty();
+                });
             }
         });
 
-        // --- 3. STEP BUTTON ---
-        view.getStepButton().addActionListener(e -> {
-            manager.nextStep();
-            updateStatistics();
-            view.getMapPanel().repaint();
+        // --- 3. STEP / RUN / PAUSE BUTTONS ---
+        view.getStepButton().addActionListener(e -> driver.step());
+
+        view.getRunButton().addActionListener(e -> {
+            applySpeed((String) view.getSpeedSelector().getSelectedItem());
+            driver.run();
         });
 
+        view.getPauseButton().addActionListener(e -> driver.pause());
+
+        // Changing the speed also affects a run in progress
+        view.getSpeedSelector().addActionListener(e ->
+                applySpeed((String) view.getSpeedSelector().getSelectedItem()));
+
         // --- 4. STOP BUTTON ---
-        view.getStopButton().addActionListener(e -> manager.stopSimulation());
+        view.getStopButton().addActionListener(e -> {
+            driver.pause();
+            driver.submit(manager::stopSimulation);
+        });
 
         // --- 5. ADD CAR BUTTON ---
         view.getAddCarButton().addActionListener(e -> {
             if (manager.getRepository() != null) {
                 String selectedImage = (String) view.getCarSelector().getSelectedItem();
                 logger.info("Adding car: {}", selectedImage);
-                manager.getRepository().addVehicle(1, "DEFAULT_VEHTYPE", selectedImage);
-                manager.nextStep();
-                view.getMapPanel().repaint();
-                // --- STATISTICS ---
-                updateStatistics();
+                driver.submit(() -> manager.getRepository().addVehicle(1, "DEFAULT_VEHTYPE", selectedImage));
+                driver.step();
             }
         });
 
@@ -136,33 +146,10 @@ public class GuiController {
             if (manager.getRepository() != null) {
                 logger.warn("STARTING STRESS TEST");
                 
-                // Add cars
-                manager.getRepository().addVehicle(100, "DEFAULT_VEHTYPE", "Red");
-                
-                // Run fast steps in a background thread
-                new Thread(() -> {
-                    try {
-                        for (int i = 0; i < 100; i++) {
-                            manager.nextStep();
-
-                            //Update filter after every 10 steps
-                            if (filterPanel != null && i % 10 == 0) {
-                                filterPanel.update();
-                            }
-                            view.getMapPanel().repaint();
-                            Thread.sleep(50); // Small delay to see animation
-                            // --- STATISTICS ---
-                            updateStatistics();
-                        }
-                        //final update after stresstest
-                        if (filterPanel != null) {
-                            filterPanel.update();
-                        }
-                        logger.info("Stress Test Finished.");
-                    } catch (InterruptedException ex) {
-                        logger.error("Stress test interrupted", ex);
-                    }
-                }).start();
+                // Add cars, then run 100 steps with the selected speed
+                driver.submit(() -> manager.getRepository().addVehicle(100, "DEFAULT_VEHTYPE", "Red"));
+                applySpeed((String) view.getSpeedSelector().getSelectedItem());
+                driver.runSteps(100);
 
             } else {
                 logger.error("Simulation not running.");
@@ -190,7 +177,7 @@ public class GuiController {
         		if (selectedId != null && manager.getLightRepository() != null) { 
         			
         			TrafficLightWrap light = manager.getLightRepository().findlight(selectedId);
-        			if (light != null) { light.setPhaseDuration(newDuration); //calling the new function
+        			if (light != null) { driver.submit(() -> light.setPhaseDuration(newDuration)); //calling the new function
         			logger.info("Updated {} duration to {} s", selectedId, newDuration);
         			}
         		}
@@ -201,21 +188,69 @@ public class GuiController {
         		
         });
     }
+    /**
+     * Finishes the GUI setup once SUMO is running. Runs on the EDT.
+     */
+    private void onSimulationStarted() {
+        // Setup filter panel once repository is available
+        if (filter == null) {
+            setupFilter(manager);
+            FilterPanel fp = getFilterPanel();
+            view.setFilterPanel(fp);
+            if (filterPanel != null) {
+                filterPanel.update();
+            }
+        }
+
+        // Populate list immediately after start finishes
+        if (manager.getLightRepository() != null) {
+            view.getLightSelector().removeAllItems();
+            
+            for (TrafficLightWrap tl : manager.getLightRepository().getList()) {
+                view.getLightSelector().addItem(tl.getID());
+            }
+            logger.info("Traffic Lights loaded into menu.");
+        } else {
+            logger.warn("No Traffic Light Repository found yet.");
+        }
+        view.getMapPanel().repaint();
+    }
+
+    /**
+     * Translates an entry of the speed selector into a driver mode.
+     */
+    private void applySpeed(String option) {
+        SimulationDriver driver = manager.getDriver();
+        if (option == null) return;
+
+        switch (option) {
+            case "1 step/s":      driver.setPaced(1); break;
+            case "50 steps/s":    driver.setPaced(50); break;
+            case "Real-time 1x":  driver.setRealTime(1); break;
+            case "Real-time 10x": driver.setRealTime(10); break;
+            case "Free run":      driver.setFreeRun(); break;
+            default:              driver.setPaced(10); break;
+        }
+    }
+
     // Sets up the vehicle filter and associated panel
-    public void setupFilter(VehicleRepository repo) {
-        this.filter=new VehicleFilter(repo);
+    public void setupFilter(SimulationManager manager) {
+        this.filter=new VehicleFilter();
         this.filterPanel=new FilterPanel(filter,this);
+
+        // The filter indexes are fed by the repository on the simulation thread
+        VehicleFilter indexed = filter;
+        manager.getDriver().submit(() -> {
+            if (manager.getRepository() != null) manager.getRepository().addIndexListener(indexed);
+        });
+        view.getMapPanel().setFilter(filter);
     }
     public FilterPanel getFilterPanel() {
         return filterPanel;
     }
+    // The map applies the filter to the latest snapshot itself, so a repaint is enough
     public void refreshMap() {
-        MapPanel mapPanel =  view.getMapPanel();
-        List<VehicleWrap> filtered = filter.getFiltered();
-
-        mapPanel.updateVehicles(filter.getFiltered());
-        mapPanel.repaint();
-
+        view.getMapPanel().repaint();
     }
 }
 
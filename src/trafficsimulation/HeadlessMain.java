@@ -0,0 +1,124 @@
+package trafficsimulation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Entry point for batch runs without any GUI (no Swing, no sumo-gui).
+ * Launches plain "sumo", injects the requested demand, steps until the
+ * configured step count or simulation time is reached and writes the exports.
+ *
+ * Usage:
+ *   HeadlessMain [--config file] [--sumo-bin sumo] [--steps N] [--until seconds]
+ *                [--vehicles N] [--type vType] [--csv file] [--pipeline depth]
+ *                [--query "speed < 2 and edge ^= gneE"] [--csv-gzip] [--csv-rotate rows]
+ *                [--trace file]
+ */
+public class HeadlessMain {
+
+    private static final Logger logger = LogManager.getLogger(HeadlessMain.class);
+
+    // Progress is logged every this many steps
+    private static final int PROGRESS_INTERVAL = 500;
+
+    public static void main(String[] args) {
+        // Make sure nothing accidentally initializes a display
+        System.setProperty("java.awt.headless", "true");
+
+        // --- Defaults ---
+        String config = SimulationManager.DEFAULT_CONFIG_FILE;
+        String sumoBin = "sumo";
+        int steps = 1000;
+        double until = Double.MAX_VALUE;
+        int vehicles = 0;
+        String vehicleType = "DEFAULT_VEHTYPE";
+        String csvFile = SimulationManager.DEFAULT_EXPORT_FILE;
+        int pipelineDepth = 0;
+        VehicleQuery query = null;
+        boolean csvGzip = false;
+        long csvRotateRows = 0;
+        String traceFile = null;
+
+        // --- Parse Arguments ---
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--config":   config = args[++i]; break;
+                    case "--sumo-bin": sumoBin = args[++i]; break;
+                    case "--steps":    steps = Integer.parseInt(args[++i]); break;
+                    case "--until":    until = Double.parseDouble(args[++i]); steps = Integer.MAX_VALUE; break;
+                    case "--vehicles": vehicles = Integer.parseInt(args[++i]); break;
+                    case "--type":     vehicleType = args[++i]; break;
+                    case "--csv":      csvFile = args[++i]; break;
+                    case "--pipeline": pipelineDepth = Integer.parseInt(args[++i]); break;
+                    case "--query":    query = VehicleQuery.parse(args[++i]); break;
+                    case "--csv-gzip": csvGzip = true; break;
+                    case "--csv-rotate": csvRotateRows = Long.parseLong(args[++i]); break;
+                    case "--trace":    traceFile = args[++i]; break;
+                    default:
+                        logger.error("Unknown argument: {}", args[i]);
+                        System.exit(2);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            logger.error("Invalid arguments: {}", String.join(" ", args));
+            System.exit(2);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid query: {}", e.getMessage());
+            System.exit(2);
+        }
+
+        SimulationManager manager = new SimulationManager(sumoBin, config);
+        manager.setExportFile(csvFile);
+        manager.setExportOptions(csvGzip, csvRotateRows);
+        manager.setTraceFile(traceFile);
+        manager.setPipelineDepth(pipelineDepth);
+
+        // Evaluated on every published snapshot (on the consumer thread when pipelined)
+        if (query != null) {
+            VehicleQuery stepQuery = query;
+            manager.addListener(snap -> {
+                if (snap.getStep() % PROGRESS_INTERVAL != 0) return;
+                int matches = stepQuery.evaluate(snap).length;
+                logger.info("Step {} | Query '{}': {} of {} vehicles", snap.getStep(), stepQuery, matches, snap.getVehicleCount());
+            });
+        }
+
+        // 1. Launch SUMO (only this thread talks to it, the driver stays idle)
+        if (!manager.startSimulation() || manager.getRepository() == null) {
+            logger.error("SUMO could not be started, aborting batch run.");
+            System.exit(1);
+        }
+
+        // 2. Inject the configured demand
+        if (vehicles > 0) {
+            manager.getRepository().addVehicle(vehicles, vehicleType, "Red");
+        }
+
+        // 3. Step until the limit is reached
+        long startNanos = System.nanoTime();
+        int done = 0;
+        while (done < steps && manager.getSnapshot().getTime() < until) {
+            manager.nextStep();
+            done++;
+            if (done % PROGRESS_INTERVAL == 0) {
+                SimulationSnapshot snap = manager.getSnapshot();
+                logger.info("Step {} | Sim Time: {} | Vehicles: {} | CO2: {} mg/s",
+                        snap.getStep(), snap.getTime(), snap.getActiveVehicleCount(),
+                        String.format("%.1f", snap.getTotalCo2()));
+                EdgeMetricsRepository edges = manager.getEdgeMetricsRepository();
+                EdgeMetricsRepository.Ranking congested = edges != null ? edges.getTopCongested() : null;
+                if (congested != null && congested.size() > 0) {
+                    logger.info("Most congested edge: {} ({} halting of {} vehicles)", congested.getEdgeId(0),
+                            congested.getHaltingCount(0), congested.getVehicleCount(0));
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        // 4. Close SUMO and write the exports
+        manager.stopSimulation();
+        logger.info("Batch run finished: {} steps in {} s ({} steps/s, pipeline depth {})",
+                done, String.format("%.1f", seconds), String.format("%.1f", done / Math.max(seconds, 1e-9)), pipelineDepth);
+    }
+}
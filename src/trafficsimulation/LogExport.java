@@ -1,21 +1,236 @@
 package trafficsimulation;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Streams the step log to a CSV file while the simulation runs.
+ * logStep() only queues the values; a background thread formats them into a buffered
+ * writer and flushes at least once per FLUSH_INTERVAL_MS, so a crash loses at most the
+ * last second. The queue is bounded, so memory stays constant however long the run is
+ * (a producer that is far ahead of the disk waits instead).
+ *
+ * Optional: gzip compression and rotation to a new file every N rows
+ * (simulation.csv, simulation-1.csv, simulation-2.csv, ...).
+ */
 public class LogExport {
-    private final List<String[]> rows = new ArrayList<>();
 
-    //int vehicleCount ergänzen, wenn implementiert
-    public void logStep(int step, double time, int vehicleCounter) {
-        rows.add(new String[] {
-            String.valueOf(step),
-            String.valueOf(time),
-            String.valueOf(vehicleCounter),
-        });
+    private static final Logger logger = LogManager.getLogger(LogExport.class);
+
+    private static final String HEADER = "step; time; vehicles; avgSpeed; co2\n";
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final int WRITE_BUFFER = 64 * 1024;
+
+    // Queued in place of a row to end the writer thread
+    private static final Row END = new Row(0, 0, 0, 0, 0);
+
+    private final Path file;
+    private final boolean gzip;
+    private final long rotateRows; // 0 = never rotate
+
+    private final BlockingQueue<Row> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    // --- Writer State (writer thread only) ---
+    private Writer out;
+    private int part = 0;
+    private long rowsInPart = 0;
+    private long rowsWritten = 0;
+    private boolean failed = false;
+
+    public LogExport(String filePath) {
+        this(filePath, false, 0);
     }
 
-    public List<String[]> getRows() {
-        return rows;
+    /**
+     * @param filePath   CSV file (".gz" is appended when compressing)
+     * @param gzip       compress the output
+     * @param rotateRows start a new file after this many rows (0 = single file)
+     */
+    public LogExport(String filePath, boolean gzip, long rotateRows) {
+        this.file = Paths.get(filePath);
+        this.gzip = gzip;
+        this.rotateRows = Math.max(0, rotateRows);
+
+        this.writerThread = new Thread(this::writeLoop, "csv-export");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues one step. Cheap; blocks only if the writer is QUEUE_CAPACITY rows behind.
+     */
+    public void logStep(int step, double time, int vehicleCounter, double averageSpeed, double co2) {
+        if (closed) return;
+        try {
+            queue.put(new Row(step, time, vehicleCounter, averageSpeed, co2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the remaining rows and closes the file. Waits for the writer thread.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("CSV export finished: {} rows in {} file(s) starting at {}", rowsWritten, part + 1, file);
+    }
+
+    // --- Writer Thread ---
+
+    private void writeLoop() {
+        long lastFlush = System.currentTimeMillis();
+        StringBuilder line = new StringBuilder(64);
+        try {
+            while (true) {
+                Row row = queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (row == END) break;
+                if (row != null && !failed) write(row, line);
+
+                long now = System.currentTimeMillis();
+                if (now - lastFlush >= FLUSH_INTERVAL_MS) {
+                    flush();
+                    lastFlush = now;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private void write(Row row, StringBuilder line) {
+        try {
+            // 1. Open the first file, or the next one when the current part is full
+            if (out == null || (rotateRows > 0 && rowsInPart >= rotateRows)) {
+                if (out != null) {
+                    closeWriter();
+                    part++;
+                }
+                openPart();
+            }
+
+            // 2. Format into a reused builder (no String.format, this runs for every step)
+            line.setLength(0);
+            line.append(row.step).append("; ")
+                .append(row.time).append("; ")
+                .append(row.vehicles).append("; ");
+            appendFixed3(line, row.averageSpeed);
+            line.append("; ");
+            appendFixed3(line, row.co2);
+            line.append('\n');
+            out.append(line);
+            rowsInPart++;
+            rowsWritten++;
+        } catch (IOException e) {
+            // Keep draining the queue so the simulation is never blocked by a broken disk
+            failed = true;
+            logger.error("CSV export to {} failed, further rows are dropped", partPath(), e);
+        }
+    }
+
+    // Appends a value with exactly three decimals and '.' as separator (like "%.3f" in Locale.ROOT)
+    private static void appendFixed3(StringBuilder sb, double value) {
+        if (!Double.isFinite(value) || Math.abs(value) >= 1e15) {
+            sb.append(value);
+            return;
+        }
+        long scaled = Math.round(value * 1000);
+        if (scaled < 0) {
+            sb.append('-');
+            scaled = -scaled;
+        }
+        long fraction = scaled % 1000;
+        sb.append(scaled / 1000).append('.');
+        if (fraction < 100) sb.append('0');
+        if (fraction < 10) sb.append('0');
+        sb.append(fraction);
+    }
+
+    private void openPart() throws IOException {
+        Path path = partPath();
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        OutputStream stream = Files.newOutputStream(path);
+        if (gzip) stream = new GZIPOutputStream(stream, WRITE_BUFFER, true);
+        out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), WRITE_BUFFER);
+        out.append(HEADER);
+        rowsInPart = 0;
+    }
+
+    // simulation.csv, simulation-1.csv, ... (plus ".gz")
+    private Path partPath() {
+        String name = file.getFileName().toString();
+        if (part > 0) {
+            int dot = name.lastIndexOf('.');
+            name = dot > 0 ? name.substring(0, dot) + "-" + part + name.substring(dot) : name + "-" + part;
+        }
+        if (gzip) name += ".gz";
+        return file.resolveSibling(name);
+    }
+
+    private void flush() {
+        if (out == null || failed) return;
+        try {
+            out.flush(); // With gzip: sync flush, the file stays readable up to here
+        } catch (IOException e) {
+            failed = true;
+            logger.error("CSV export to {} failed, further rows are dropped", partPath(), e);
+        }
+    }
+
+    private void closeWriter() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.error("Error closing CSV file {}", partPath(), e);
+        }
+        out = null;
+    }
+
+    /**
+     * Values of one step, handed from the simulation to the writer thread.
+     */
+    private static final class Row {
+        final int step;
+        final double time;
+        final int vehicles;
+        final double averageSpeed;
+        final double co2;
+
+        Row(int step, double time, int vehicles, double averageSpeed, double co2) {
+            this.step = step;
+            this.time = time;
+            this.vehicles = vehicles;
+            this.averageSpeed = averageSpeed;
+            this.co2 = co2;
+        }
     }
 }
@@ -5,6 +5,8 @@ public class Main {
 
         // Handles SUMO connection and simulation data.
         SimulationManager manager = new SimulationManager();
+        // Let views and the CSV log work on step N while SUMO computes step N+1
+        manager.setPipelineDepth(2);
 
         // Handles the drawing of the map and vehicles.
         MapPanel mapPanel = new MapPanel(manager);
@@ -25,6 +25,9 @@ public class MainFrame extends JFrame {
     // --- Control Panel Components ---
     private JButton startButton;
     private JButton stepButton;
+    private JButton runButton;
+    private JButton pauseButton;
+    private JComboBox<String> speedSelector;
     private JButton stopButton;
     private JButton addCarButton;
     private JButton exportCsvButton;
@@ -75,6 +78,8 @@ public class MainFrame extends JFrame {
         // Initialize Buttons
         startButton = new JButton("Start");
         stepButton  = new JButton("Step");
+        runButton   = new JButton("Run");
+        pauseButton = new JButton("Pause");
         stopButton  = new JButton("Stop");
         addCarButton = new JButton("Add Car");
 
@@ -94,10 +99,18 @@ public class MainFrame extends JFrame {
 
         lightSelector = new JComboBox<>(); // for TrafficLight
 
+        // Step rate options for Run (interpreted by the GuiController)
+        String[] speeds = {"1 step/s", "10 steps/s", "50 steps/s", "Real-time 1x", "Real-time 10x", "Free run"};
+        speedSelector = new JComboBox<>(speeds);
+        speedSelector.setSelectedItem("10 steps/s");
+
         
         // Add components to Bottom Panel
         bottomPanel.add(startButton);
         bottomPanel.add(stepButton);
+        bottomPanel.add(runButton);
+        bottomPanel.add(pauseButton);
+        bottomPanel.add(speedSelector);
         bottomPanel.add(new JLabel("Vehicle Type:")); // Visual separator
         bottomPanel.add(carSelector);
         bottomPanel.add(addCarButton);
@@ -158,6 +171,9 @@ public class MainFrame extends JFrame {
 
     public JButton getStartButton() { return startButton; }
     public JButton getStepButton() { return stepButton; }
+    public JButton getRunButton() { return runButton; }
+    public JButton getPauseButton() { return pauseButton; }
+    public JComboBox<String> getSpeedSelector() { return speedSelector; }
     public JButton getStopButton() { return stopButton; }
     public JButton getAddCarButton() { return addCarButton; }
     public JComboBox<String> getCarSelector() { return carSelector; }
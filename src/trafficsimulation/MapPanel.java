@@ -5,26 +5,19 @@ import javax.swing.ImageIcon;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Path2D;
-import java.awt.geom.Point2D;
-import java.util.ArrayList;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import de.tudresden.sumo.cmd.Lane;
-import de.tudresden.sumo.objects.SumoGeometry;
-import de.tudresden.sumo.objects.SumoPosition2D;
-
 public class MapPanel extends JPanel {
 
     // --- Core Dependencies ---
-    private SimulationManager manager;
+    private SnapshotSource source; // Live simulation or trace replay
     private Map<String, Image> imageMap = new HashMap<>();
-    private List<List<SumoPosition2D>> roadShapes = new ArrayList<>();
-    private List<VehicleWrap> vehiclesToShow;
+    private VehicleFilter filter; // Optional, set once the filter panel exists
 
     // --- State Flags ---
-    private boolean mapLoaded = false;
     private boolean isCentered = false; // Checks if camera auto-centered
 
     // --- Navigation & Zoom Variables ---
@@ -33,10 +26,38 @@ public class MapPanel extends JPanel {
     private double offsetY = 0;
     private Point lastMousePt;
 
-    public MapPanel(SimulationManager manager) {
-        this.manager = manager;
+    // --- Cached Road Layer ---
+    // Roads only change with zoom or size, so they are rendered once into an image that is
+    // larger than the panel by LAYER_MARGIN on every side. Panning just blits it with an offset.
+    private static final int LAYER_MARGIN = 256;
+    private BufferedImage roadLayer;
+    private NetworkModel layerNetwork;
+    private double layerScale;
+    private double layerOffsetX;
+    private double layerOffsetY;
+
+    // --- Vehicle Level of Detail ---
+    // Below POINT_LOD_PIXELS a car is a dot, below SPRITE_LOD_PIXELS an oriented rectangle.
+    private static final double POINT_LOD_PIXELS = 4.0;
+    private static final double SPRITE_LOD_PIXELS = 16.0;
+    private static final int DOT_PIXELS = 3;
+    // Flat colors used when the sprites are too small to be drawn. Each color is a batch
+    // bucket; the last bucket takes unknown images (plain red).
+    private static final String[] BATCH_NAMES = {"Red", "Yellow", "Blue", "White"};
+    private static final Color[] BATCH_COLORS = {
+            new Color(210, 40, 40), new Color(240, 210, 40), new Color(50, 90, 210),
+            new Color(240, 240, 240), Color.RED};
+    private int[][] batchMembers = new int[BATCH_COLORS.length][64]; // Reused between frames
+    private int[] batchSizes = new int[BATCH_COLORS.length];
+    private SpriteAtlas spriteAtlas = new SpriteAtlas(imageMap);
+
+    // --- Interpolation ---
+    // Cars are drawn between their previous and current position, so low step rates still move smoothly
+    private double frameAlpha = 1.0;
+
+    public MapPanel(SnapshotSource source) {
+        this.source = source;
         this.setBackground(new Color(50, 150, 50)); // Background: Green Grass
-        this.vehiclesToShow = new ArrayList<>();
         // Load Vehicle Images
         loadImage("Red",    "photos/red.png");
         loadImage("Yellow", "photos/yellow.png");
@@ -76,43 +97,15 @@ public class MapPanel extends JPanel {
         if (icon.getIconWidth() > 0) imageMap.put(name, icon.getImage());
         else System.out.println("⚠️ Image not found: " + path);
     }
-    /**
-     * Loads road geometry from SUMO (executed once per map).
-     */
-    public void loadMap() {
-        if (manager.getConnection() == null || mapLoaded) return;
-        try {
-            System.out.println("⏳ Loading Map Roads...");
-            List<String> lanes = (List<String>) manager.getConnection().do_job_get(Lane.getIDList());
-            
-            roadShapes.clear();
-            for (String laneId : lanes) {
-                SumoGeometry geometry = (SumoGeometry) manager.getConnection().do_job_get(Lane.getShape(laneId));
-                roadShapes.add((List<SumoPosition2D>) geometry.coords);
-            }
-            
-            mapLoaded = true;
-            centerMap(); // Auto-center camera after loading
-            System.out.println("✅ Map Loaded & Centered!");
-            repaint();
-        } catch (Exception e) { e.printStackTrace(); }
-    }
     /**
      * Calculates the optimal Zoom and Offset to fit the map on screen.
      */
-    public void centerMap() {
-        if (roadShapes.isEmpty() || getWidth() == 0 || getHeight() == 0) return;
+    public void centerMap(NetworkModel network) {
+        if (network.getPointCount() == 0 || getWidth() == 0 || getHeight() == 0) return;
 
-        // 1. Calculate Map Bounds (Min/Max X, Y)
-        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
-        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
-
-        for (List<SumoPosition2D> road : roadShapes) {
-            for (SumoPosition2D p : road) {
-                if (p.x < minX) minX = p.x; if (p.x > maxX) maxX = p.x;
-                if (p.y < minY) minY = p.y; if (p.y > maxY) maxY = p.y;
-            }
-        }
+        // 1. Map Bounds (Min/Max X, Y) are precomputed by the network model
+        double minX = network.getMinX(), maxX = network.getMaxX();
+        double minY = network.getMinY(), maxY = network.getMaxY();
 
         // 2. Calculate Scale to fit screen (with margin)
         double mapWidth = maxX - minX;
@@ -134,123 +127,295 @@ public class MapPanel extends JPanel {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         
-        // Lazy loading of map data
-        if (manager.getConnection() != null && !mapLoaded) loadMap();
-        if (mapLoaded && !isCentered && getWidth() > 0) centerMap();
-        if (manager.getConnection() == null) return;
+        // Map is parsed from the net file in the background; draw as soon as it is there
+        NetworkModel network = source.getNetwork();
+        if (network == null) return;
+        if (!isCentered && getWidth() > 0) centerMap(network);
 
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
         // ==========================================
-        // 1. Draw Roads (Asphalt Style)
+        // 1. Draw Roads (cached layer)
         // ==========================================
-        g2d.setColor(new Color(30, 30, 30)); 
-        float pixelWidth = (float) (3.3f * scaleFactor);
-        if (pixelWidth < 2) pixelWidth = 2;
-        g2d.setStroke(new BasicStroke(pixelWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        drawRoadLayer(g2d, network);
 
-        for (List<SumoPosition2D> road : roadShapes) {
-            if (road.isEmpty()) continue;
-            Path2D.Float path = new Path2D.Float();
-            SumoPosition2D start = road.get(0);
-            
-            // Map coordinates logic: Y is inverted (Height - Y)
-            path.moveTo((start.x * scaleFactor) + offsetX, getHeight() - (start.y * scaleFactor) + offsetY);
-
-            for (int i = 1; i < road.size(); i++) {
-                SumoPosition2D p = road.get(i);
-                path.lineTo((p.x * scaleFactor) + offsetX, getHeight() - (p.y * scaleFactor) + offsetY);
-            }
-            g2d.draw(path);
-        }
+        // All dynamic data comes from one frozen snapshot (never blocks the simulation)
+        SimulationSnapshot snap = source.getSnapshot();
+        frameAlpha = snap.getInterpolation(System.nanoTime());
+
+        // Visible world rectangle (screen y grows downwards, world y upwards)
+        double viewMinX = -offsetX / scaleFactor;
+        double viewMaxX = (getWidth() - offsetX) / scaleFactor;
+        double viewMinY = offsetY / scaleFactor;
+        double viewMaxY = (getHeight() + offsetY) / scaleFactor;
 
         // ==========================================
-        // 2. Draw Traffic Lights
+        // 2. Draw Traffic Lights (visible signal heads only)
         // ==========================================
-        if (manager.getLightRepository() != null) {
-            for (TrafficLightWrap tl : manager.getLightRepository().getList()) {
-                String stateString = tl.getCurrentState();
-                
-                for (TrafficLightWrap.SignalPoint sp : tl.getSignalPoints()) {
-                    int x = (int) ((sp.pos.x * scaleFactor) + offsetX);
-                    int y = (int) (getHeight() - (sp.pos.y * scaleFactor) + offsetY);
-
-                    // Determine color based on state string index
-                    Color lightColor = Color.RED;
-                    if (stateString != null && sp.index < stateString.length()) {
-                        char c = stateString.charAt(sp.index);
-                        if (c == 'G' || c == 'g') lightColor = Color.GREEN;
-                        else if (c == 'Y' || c == 'y') lightColor = Color.YELLOW;
-                    }
-                    
-                    g2d.setColor(lightColor);
-                    int size = (int)(2.0 * scaleFactor); // Dynamic sizing
-                    if (size < 8) size = 8; if (size > 20) size = 20;
-                    
-                    g2d.fillOval(x - size/2, y - size/2, size, size);
+        if (!snap.getLightStates().isEmpty()) {
+            int size = (int)(2.0 * scaleFactor); // Dynamic sizing
+            if (size < 8) size = 8; if (size > 20) size = 20;
+            double pad = size / scaleFactor;
+
+            for (int s : network.getSignalGrid().query(viewMinX - pad, viewMinY - pad, viewMaxX + pad, viewMaxY + pad)) {
+                String stateString = snap.getLightState(network.getTrafficLightId(network.getSignalLight(s)));
+                int index = network.getSignalLinkIndex(s);
+                int x = (int) ((network.getSignalX(s) * scaleFactor) + offsetX);
+                int y = (int) (getHeight() - (network.getSignalY(s) * scaleFactor) + offsetY);
+
+                // Determine color based on state string index
+                Color lightColor = Color.RED;
+                if (stateString != null && index < stateString.length()) {
+                    char c = stateString.charAt(index);
+                    if (c == 'G' || c == 'g') lightColor = Color.GREEN;
+                    else if (c == 'Y' || c == 'y') lightColor = Color.YELLOW;
                 }
+
+                g2d.setColor(lightColor);
+                g2d.fillOval(x - size/2, y - size/2, size, size);
             }
         }
 
         // ==========================================
         // 3. Draw Vehicles
         // ==========================================
-        try {
-            // Bestimme welche Autos gezeichnet werden sollen
-            List<VehicleWrap> carsToShow;
+        // Vehicle Size (Dynamic)
+        double realCarLen = 7.0;
+        double carPixels = realCarLen * scaleFactor;
+        double pad = Math.max(carPixels, 5) / scaleFactor;
+
+        // Bestimme welche Autos gezeichnet werden sollen: gefilterte Liste oder alle sichtbaren
+        int[] carsToShow = (filter != null && filter.isActive())
+                ? filter.getFiltered(snap)
+                : snap.getVehicleGrid().query(viewMinX - pad, viewMinY - pad, viewMaxX + pad, viewMaxY + pad);
+
+        // Level of detail: dots, then rectangles, sprites only when they are recognizable
+        if (carPixels >= SPRITE_LOD_PIXELS) {
+            drawSprites(g2d, snap, carsToShow, (int) carPixels);
+        } else {
+            drawBatched(g2d, snap, carsToShow, carPixels >= POINT_LOD_PIXELS ? carPixels : 0);
+        }
+    }
+
+    // --- Vehicle Rendering ---
+
+    /**
+     * Full detail: the rotated PNG of every vehicle.
+     */
+    private void drawSprites(Graphics2D g2d, SimulationSnapshot snap, int[] cars, int pixelSize) {
+        if (pixelSize <= SpriteAtlas.MAX_PIXEL_SIZE) {
+            drawAtlasSprites(g2d, snap, cars, pixelSize);
+            return;
+        }
+
+        // Zoomed in very far: only a few cars are visible, rotate the source directly
+        for (int i : cars) {
+            // Calculate screen position
+            int x = (int) ((snap.getX(i, frameAlpha) * scaleFactor) + offsetX);
+            int y = (int) (getHeight() - (snap.getY(i, frameAlpha) * scaleFactor) + offsetY);
+            if (x < -pixelSize || y < -pixelSize || x > getWidth() + pixelSize || y > getHeight() + pixelSize) continue;
+
+            // Rotate and Draw
+            var oldTransform = g2d.getTransform();
+            g2d.translate(x, y);
+            g2d.rotate(Math.toRadians(snap.getAngle(i, frameAlpha)));
 
-            if (vehiclesToShow != null && !vehiclesToShow.isEmpty()) {
-                // FILTER AKTIV: Zeige nur gefilterte Autos
-                carsToShow = vehiclesToShow;
+            Image imgToDraw = imageMap.get(snap.getImageName(i));
+            if (imgToDraw == null) imgToDraw = imageMap.get("Red");
+
+            if (imgToDraw != null) {
+                g2d.drawImage(imgToDraw, -pixelSize/2, -pixelSize/2, pixelSize, pixelSize, this);
             } else {
-                // KEINE FILTER: Zeige alle Autos aus Repository
-                if (manager.getRepository() != null) {
-                    carsToShow = manager.getRepository().getList();
-                } else {
-                    carsToShow = new ArrayList<>();
-                }
+                g2d.setColor(Color.RED);
+                g2d.fillOval(-pixelSize/2, -pixelSize/2, pixelSize, pixelSize);
+            }
+            g2d.setTransform(oldTransform);
+        }
+    }
+
+    /**
+     * Blits pre-rotated sprites from the atlas (no per-vehicle transform or scaling).
+     */
+    private void drawAtlasSprites(Graphics2D g2d, SimulationSnapshot snap, int[] cars, int pixelSize) {
+        spriteAtlas.setPixelSize(pixelSize);
+        int half = spriteAtlas.getSpriteSize() / 2;
+
+        for (int i : cars) {
+            int x = (int) ((snap.getX(i, frameAlpha) * scaleFactor) + offsetX);
+            int y = (int) (getHeight() - (snap.getY(i, frameAlpha) * scaleFactor) + offsetY);
+            if (x < -half || y < -half || x > getWidth() + half || y > getHeight() + half) continue;
+
+            Image sprite = spriteAtlas.get(snap.getImageName(i), snap.getAngle(i, frameAlpha));
+            if (sprite == null) sprite = spriteAtlas.get("Red", snap.getAngle(i, frameAlpha));
+
+            if (sprite != null) {
+                g2d.drawImage(sprite, x - half, y - half, null);
+            } else {
+                g2d.setColor(Color.RED);
+                g2d.fillOval(x - pixelSize/2, y - pixelSize/2, pixelSize, pixelSize);
             }
+        }
+    }
 
-            // Zeichne alle Autos aus der Liste
-            for (VehicleWrap car : carsToShow) {
-                Point2D.Double pos = car.getPosition();
-                double angle = car.getAngle();
-
-                // Calculate screen position
-                int x = (int) ((pos.x * scaleFactor) + offsetX);
-                int y = (int) (getHeight() - (pos.y * scaleFactor) + offsetY);
-
-                // Vehicle Size (Dynamic)
-                double realCarLen = 7.0;
-                int pixelSize = (int) (realCarLen * scaleFactor);
-                if (pixelSize < 5) pixelSize = 5;
-
-                // Rotate and Draw
-                var oldTransform = g2d.getTransform();
-                g2d.translate(x, y);
-                g2d.rotate(Math.toRadians(angle));
-
-                Image imgToDraw = imageMap.get(car.getImageName());
-                if (imgToDraw == null) imgToDraw = imageMap.get("Red");
-
-                if (imgToDraw != null) {
-                    g2d.drawImage(imgToDraw, -pixelSize/2, -pixelSize/2, pixelSize, pixelSize, this);
-                } else {
-                    g2d.setColor(Color.RED);
-                    g2d.fillOval(-pixelSize/2, -pixelSize/2, pixelSize, pixelSize);
+    /**
+     * Low detail: vehicles are grouped by color so each color is set once, then drawn as
+     * plain dots (carPixels == 0) or as oriented rectangles, without antialiasing.
+     * Separate fillRect/fillPolygon calls are used on purpose: one combined Path2D is
+     * much slower to rasterize once it holds thousands of sub-paths.
+     */
+    private void drawBatched(Graphics2D g2d, SimulationSnapshot snap, int[] cars, double carPixels) {
+        // 1. Group the visible vehicles by color bucket (arrays kept from the last frame)
+        Arrays.fill(batchSizes, 0);
+        for (int i : cars) {
+            double x = (snap.getX(i, frameAlpha) * scaleFactor) + offsetX;
+            double y = getHeight() - (snap.getY(i, frameAlpha) * scaleFactor) + offsetY;
+            if (x < -carPixels || y < -carPixels || x > getWidth() + carPixels || y > getHeight() + carPixels) continue;
+
+            int bucket = batchBucket(snap.getImageName(i));
+            int size = batchSizes[bucket];
+            if (size == batchMembers[bucket].length) {
+                batchMembers[bucket] = Arrays.copyOf(batchMembers[bucket], size * 2);
+            }
+            batchMembers[bucket][size] = i;
+            batchSizes[bucket] = size + 1;
+        }
+
+        // 2. Draw each group with a single color
+        Object oldAntialias = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        double halfLen = carPixels / 2;
+        double halfWidth = carPixels * 0.225;
+        int[] px = new int[4];
+        int[] py = new int[4];
+
+        for (int bucket = 0; bucket < BATCH_COLORS.length; bucket++) {
+            int size = batchSizes[bucket];
+            if (size == 0) continue;
+            g2d.setColor(BATCH_COLORS[bucket]);
+            int[] members = batchMembers[bucket];
+
+            for (int k = 0; k < size; k++) {
+                int i = members[k];
+                double x = (snap.getX(i, frameAlpha) * scaleFactor) + offsetX;
+                double y = getHeight() - (snap.getY(i, frameAlpha) * scaleFactor) + offsetY;
+                if (carPixels == 0) {
+                    g2d.fillRect((int) x - DOT_PIXELS / 2, (int) y - DOT_PIXELS / 2, DOT_PIXELS, DOT_PIXELS);
+                    continue;
                 }
-                g2d.setTransform(oldTransform);
+
+                // SUMO angle: degrees clockwise from north; screen y points down
+                double rad = Math.toRadians(snap.getAngle(i, frameAlpha));
+                double hx = Math.sin(rad), hy = -Math.cos(rad); // Heading
+                double lx = halfLen * hx, ly = halfLen * hy;
+                double wx = -halfWidth * hy, wy = halfWidth * hx; // Perpendicular
+                px[0] = (int) (x + lx + wx); py[0] = (int) (y + ly + wy);
+                px[1] = (int) (x + lx - wx); py[1] = (int) (y + ly - wy);
+                px[2] = (int) (x - lx - wx); py[2] = (int) (y - ly - wy);
+                px[3] = (int) (x - lx + wx); py[3] = (int) (y - ly + wy);
+                g2d.fillPolygon(px, py, 4);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, oldAntialias);
+    }
 
+    private static int batchBucket(String imageName) {
+        for (int b = 0; b < BATCH_NAMES.length; b++) {
+            if (BATCH_NAMES[b].equals(imageName)) return b;
+        }
+        return BATCH_NAMES.length;
     }
-    public void updateVehicles(List<VehicleWrap> vehicles) {
-        this.vehiclesToShow = vehicles;
+
+    /**
+     * True while the latest step is still being animated (frames must keep coming).
+     */
+    public boolean isAnimating() {
+        return source.getSnapshot().getInterpolation(System.nanoTime()) < 1.0;
     }
 
+    public void setFilter(VehicleFilter filter) {
+        this.filter = filter;
+    }
+
+    // --- Road Layer ---
+
+    /**
+     * Blits the cached road layer, re-rendering it only when zoom, size or network changed
+     * or when panning moved the view beyond the cached margin.
+     */
+    private void drawRoadLayer(Graphics2D g2d, NetworkModel network) {
+        double dx = offsetX - layerOffsetX;
+        double dy = offsetY - layerOffsetY;
+        boolean valid = roadLayer != null
+                && layerNetwork == network
+                && layerScale == scaleFactor
+                && roadLayer.getWidth() == getWidth() + 2 * LAYER_MARGIN
+                && roadLayer.getHeight() == getHeight() + 2 * LAYER_MARGIN
+                && Math.abs(dx) <= LAYER_MARGIN && Math.abs(dy) <= LAYER_MARGIN;
+
+        if (!valid) {
+            renderRoadLayer(network);
+            dx = 0;
+            dy = 0;
+        }
+        g2d.drawImage(roadLayer, (int) Math.round(dx) - LAYER_MARGIN, (int) Math.round(dy) - LAYER_MARGIN, null);
+    }
+
+    private void renderRoadLayer(NetworkModel network) {
+        int width = getWidth() + 2 * LAYER_MARGIN;
+        int height = getHeight() + 2 * LAYER_MARGIN;
+        if (roadLayer == null || roadLayer.getWidth() != width || roadLayer.getHeight() != height) {
+            // Compatible images can stay in video memory, so the blit is accelerated
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            roadLayer = gc != null
+                    ? gc.createCompatibleImage(width, height, Transparency.OPAQUE)
+                    : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        layerNetwork = network;
+        layerScale = scaleFactor;
+        layerOffsetX = offsetX;
+        layerOffsetY = offsetY;
+
+        Graphics2D g = roadLayer.createGraphics();
+        try {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+            // Asphalt style
+            g.setColor(new Color(30, 30, 30));
+            float pixelWidth = (float) (3.3f * scaleFactor);
+            if (pixelWidth < 2) pixelWidth = 2;
+            g.setStroke(new BasicStroke(pixelWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+
+            // Same transform as the screen, shifted by the margin
+            double baseX = offsetX + LAYER_MARGIN;
+            double baseY = getHeight() + offsetY + LAYER_MARGIN;
+
+            // Only lanes with a segment inside the layer (plus the stroke width)
+            double pad = pixelWidth / scaleFactor;
+            int[] lanes = network.getLaneGrid().query(
+                    -baseX / scaleFactor - pad, (baseY - height) / scaleFactor - pad,
+                    (width - baseX) / scaleFactor + pad, baseY / scaleFactor + pad);
+
+            Path2D.Float path = new Path2D.Float();
+            for (int lane : lanes) {
+                int first = network.getLaneStart(lane);
+                int end = network.getLaneEnd(lane);
+                if (first == end) continue;
+
+                // Map coordinates logic: Y is inverted (Height - Y)
+                path.reset();
+                path.moveTo(network.getPointX(first) * scaleFactor + baseX, baseY - network.getPointY(first) * scaleFactor);
+                for (int p = first + 1; p < end; p++) {
+                    path.lineTo(network.getPointX(p) * scaleFactor + baseX, baseY - network.getPointY(p) * scaleFactor);
+                }
+                g.draw(path);
+            }
+        } finally {
+            g.dispose();
+        }
     }
+}
 
 
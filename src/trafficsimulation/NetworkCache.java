@@ -0,0 +1,246 @@
+package trafficsimulation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Binary cache of a processed network, so restarts against the same net file skip the XML parse.
+ * The cache file is named after the SHA-256 of the net file, written once and opened
+ * as a read-only MappedByteBuffer on later runs. Coordinate and offset arrays are used
+ * directly as views into the mapping (they stay off the Java heap); only the ID
+ * dictionaries are decoded into Strings.
+ *
+ * Layout (little endian, all sections 4-byte aligned):
+ *   header:  magic, version, sha-256 (32 bytes), laneCount, pointCount, edgeCount,
+ *            junctionCount, tlsCount, signalCount
+ *   numbers: laneOffsets[laneCount+1], coords[2*pointCount], junctionCoords[2*junctionCount],
+ *            signalOffsets[tlsCount+1], signalCoords[2*signalCount], signalLinks[signalCount]
+ *   strings: laneIds, edgeIds, junctionIds, tlsIds (each: byte length + UTF-8)
+ */
+public final class NetworkCache {
+
+    private static final Logger logger = LogManager.getLogger(NetworkCache.class);
+
+    public static final String DEFAULT_CACHE_DIR = "cache";
+
+    private static final int MAGIC = 0x4E455443; // "NETC"
+    private static final int VERSION = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final int HEADER_SIZE = 8 + HASH_LENGTH + 6 * 4;
+
+    private NetworkCache() {
+    }
+
+    /**
+     * Returns the network of the given net file, from the cache if possible.
+     * On a cache miss the file is parsed and the cache is written for the next run.
+     */
+    public static NetworkModel load(Path netFile, Path cacheDir) throws IOException, XMLStreamException {
+        long start = System.nanoTime();
+        byte[] hash = hash(netFile);
+        Path cacheFile = cacheDir.resolve("net-" + toHex(hash).substring(0, 16) + ".bin");
+
+        if (Files.exists(cacheFile)) {
+            try {
+                NetworkModel model = read(cacheFile, hash);
+                logger.info("Loaded network {} from cache in {} ms",
+                        netFile.getFileName(), (System.nanoTime() - start) / 1_000_000);
+                return model;
+            } catch (IOException | RuntimeException e) {
+                // Damaged or truncated file: parse the net file and overwrite the cache below
+                logger.warn("Ignoring unreadable network cache {}: {}", cacheFile, e.toString());
+            }
+        }
+
+        NetworkModel model = NetworkLoader.parse(netFile);
+        try {
+            write(model, hash, cacheFile);
+        } catch (IOException e) {
+            logger.warn("Could not write network cache {}", cacheFile, e);
+        }
+        return model;
+    }
+
+    public static NetworkModel load(Path netFile) throws IOException, XMLStreamException {
+        return load(netFile, Paths.get(DEFAULT_CACHE_DIR));
+    }
+
+    // --- Reading ---
+
+    private static NetworkModel read(Path cacheFile, byte[] expectedHash) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (map.remaining() < HEADER_SIZE) {
+            throw new IOException("truncated header");
+        }
+        if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+            throw new IOException("not a network cache of version " + VERSION);
+        }
+        byte[] hash = new byte[HASH_LENGTH];
+        map.get(hash);
+        if (!MessageDigest.isEqual(hash, expectedHash)) {
+            throw new IOException("hash mismatch");
+        }
+
+        int laneCount = map.getInt();
+        int pointCount = map.getInt();
+        int edgeCount = map.getInt();
+        int junctionCount = map.getInt();
+        int tlsCount = map.getInt();
+        int signalCount = map.getInt();
+
+        IntBuffer laneOffsets = section(map, laneCount + 1L).asIntBuffer();
+        FloatBuffer coords = section(map, 2L * pointCount).asFloatBuffer();
+        FloatBuffer junctionCoords = section(map, 2L * junctionCount).asFloatBuffer();
+        IntBuffer signalOffsets = section(map, tlsCount + 1L).asIntBuffer();
+        FloatBuffer signalCoords = section(map, 2L * signalCount).asFloatBuffer();
+        IntBuffer signalLinks = section(map, signalCount).asIntBuffer();
+
+        String[] laneIds = readStrings(map, laneCount);
+        String[] edgeIds = readStrings(map, edgeCount);
+        String[] junctionIds = readStrings(map, junctionCount);
+        String[] tlsIds = readStrings(map, tlsCount);
+
+        return new NetworkModel(laneIds, laneOffsets, coords, edgeIds, junctionIds, junctionCoords,
+                tlsIds, signalOffsets, signalCoords, signalLinks);
+    }
+
+    // Slices the next count 4-byte values; counts come from the file, so they are checked first
+    private static ByteBuffer section(ByteBuffer map, long count) throws IOException {
+        if (count < 0 || count * 4 > map.remaining()) {
+            throw new IOException("truncated section of " + count + " values");
+        }
+        ByteBuffer section = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+        section.limit((int) count * 4);
+        map.position(map.position() + (int) count * 4);
+        return section;
+    }
+
+    private static String[] readStrings(ByteBuffer map, int count) throws IOException {
+        if (count < 0 || count > map.remaining() / 4) throw new IOException("invalid string count " + count);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            int length = map.remaining() < 4 ? -1 : map.getInt();
+            if (length < 0 || length > map.remaining()) {
+                throw new IOException("truncated string section");
+            }
+            byte[] bytes = new byte[length];
+            map.get(bytes);
+            result[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    // --- Writing ---
+
+    private static void write(NetworkModel model, byte[] hash, Path cacheFile) throws IOException {
+        int laneCount = model.getLaneCount();
+        int pointCount = model.getPointCount();
+        int edgeCount = model.getEdgeCount();
+        int junctionCount = model.getJunctionCount();
+        int tlsCount = model.getTrafficLightCount();
+        int signalCount = model.getSignalCount();
+
+        // Encode the dictionaries first to know the total size
+        byte[][] laneIds = new byte[laneCount][];
+        byte[][] edgeIds = new byte[edgeCount][];
+        byte[][] junctionIds = new byte[junctionCount][];
+        byte[][] tlsIds = new byte[tlsCount][];
+        long stringBytes = 0;
+        for (int i = 0; i < laneCount; i++) stringBytes += 4 + (laneIds[i] = utf8(model.getLaneId(i))).length;
+        for (int i = 0; i < edgeCount; i++) stringBytes += 4 + (edgeIds[i] = utf8(model.getEdgeId(i))).length;
+        for (int i = 0; i < junctionCount; i++) stringBytes += 4 + (junctionIds[i] = utf8(model.getJunctionId(i))).length;
+        for (int i = 0; i < tlsCount; i++) stringBytes += 4 + (tlsIds[i] = utf8(model.getTrafficLightId(i))).length;
+
+        long numberCount = (laneCount + 1) + 2L * pointCount + 2L * junctionCount
+                + (tlsCount + 1) + 2L * signalCount + signalCount;
+        long size = HEADER_SIZE + 4 * numberCount + stringBytes;
+        if (size > Integer.MAX_VALUE) throw new IOException("network too large for the cache");
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+
+        // 1. Header
+        buf.putInt(MAGIC).putInt(VERSION).put(hash);
+        buf.putInt(laneCount).putInt(pointCount).putInt(edgeCount)
+           .putInt(junctionCount).putInt(tlsCount).putInt(signalCount);
+
+        // 2. Numeric sections
+        for (int i = 0; i < laneCount; i++) buf.putInt(model.getLaneStart(i));
+        buf.putInt(laneCount == 0 ? 0 : model.getLaneEnd(laneCount - 1));
+        for (int p = 0; p < pointCount; p++) buf.putFloat(model.getPointX(p)).putFloat(model.getPointY(p));
+        for (int j = 0; j < junctionCount; j++) buf.putFloat(model.getJunctionX(j)).putFloat(model.getJunctionY(j));
+        for (int t = 0; t < tlsCount; t++) buf.putInt(model.getSignalStart(t));
+        buf.putInt(tlsCount == 0 ? 0 : model.getSignalEnd(tlsCount - 1));
+        for (int s = 0; s < signalCount; s++) buf.putFloat(model.getSignalX(s)).putFloat(model.getSignalY(s));
+        for (int s = 0; s < signalCount; s++) buf.putInt(model.getSignalLinkIndex(s));
+
+        // 3. Dictionaries
+        for (byte[][] section : new byte[][][] {laneIds, edgeIds, junctionIds, tlsIds}) {
+            for (byte[] bytes : section) {
+                buf.putInt(bytes.length).put(bytes);
+            }
+        }
+        buf.flip();
+
+        // Write to a temp file and move it, so a crash never leaves a half-written cache
+        Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(cacheFile.toAbsolutePath().getParent(), "net-", ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (buf.hasRemaining()) channel.write(buf);
+        }
+        Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Wrote network cache {} ({} KB)", cacheFile, size / 1024);
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // --- Hashing ---
+
+    private static byte[] hash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] chunk = new byte[1 << 16];
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                digest.update(chunk, 0, n);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
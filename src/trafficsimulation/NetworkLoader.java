@@ -0,0 +1,221 @@
+package trafficsimulation;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the network geometry directly from the SUMO .net.xml(.gz) file.
+ * Uses a StAX stream, so the whole network is read in one pass without building a DOM
+ * and without any TraCI call. It can therefore run before or in parallel with the SUMO launch.
+ */
+public final class NetworkLoader {
+
+    private static final Logger logger = LogManager.getLogger(NetworkLoader.class);
+
+    private NetworkLoader() {
+    }
+
+    /**
+     * Loads the network referenced by the net-file entry of a .sumocfg file.
+     * Uses the binary cache when the net file has been processed before.
+     */
+    public static NetworkModel loadFromConfig(String configFile) throws IOException, XMLStreamException {
+        return NetworkCache.load(findNetFile(configFile));
+    }
+
+    /**
+     * Resolves the net-file of a SUMO configuration (relative to the config's folder).
+     */
+    public static Path findNetFile(String configFile) throws IOException, XMLStreamException {
+        Path config = Paths.get(configFile);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(config))) {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() == XMLStreamConstants.START_ELEMENT && "net-file".equals(xml.getLocalName())) {
+                        // Several files may be listed, the first one is the network
+                        String value = xml.getAttributeValue(null, "value").split(",")[0].trim();
+                        Path parent = config.toAbsolutePath().getParent();
+                        return parent != null ? parent.resolve(value) : Paths.get(value);
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        }
+        throw new IOException("No net-file found in " + configFile);
+    }
+
+    /**
+     * Parses a .net.xml or .net.xml.gz file in a single streaming pass.
+     */
+    public static NetworkModel parse(Path netFile) throws IOException, XMLStreamException {
+        long start = System.nanoTime();
+
+        List<String> laneIds = new ArrayList<>();
+        IntList laneOffsets = new IntList();
+        FloatList coords = new FloatList();
+        List<String> edgeIds = new ArrayList<>();
+        List<String> junctionIds = new ArrayList<>();
+        FloatList junctionCoords = new FloatList();
+
+        // Controlled lane per link index, grouped by light (in file order)
+        Map<String, Map<Integer, String>> controlledLanes = new LinkedHashMap<>();
+
+        laneOffsets.add(0);
+        try (InputStream in = open(netFile)) {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            try {
+                while (xml.hasNext()) {
+                    if (xml.next() != XMLStreamConstants.START_ELEMENT) continue;
+
+                    switch (xml.getLocalName()) {
+                        case "edge":
+                            if (!"internal".equals(xml.getAttributeValue(null, "function"))) {
+                                edgeIds.add(xml.getAttributeValue(null, "id"));
+                            }
+                            break;
+                        case "lane":
+                            laneIds.add(xml.getAttributeValue(null, "id"));
+                            parseShape(xml.getAttributeValue(null, "shape"), coords);
+                            laneOffsets.add(coords.size() / 2);
+                            break;
+                        case "junction":
+                            if (!"internal".equals(xml.getAttributeValue(null, "type"))) {
+                                junctionIds.add(xml.getAttributeValue(null, "id"));
+                                junctionCoords.add(Float.parseFloat(xml.getAttributeValue(null, "x")));
+                                junctionCoords.add(Float.parseFloat(xml.getAttributeValue(null, "y")));
+                            }
+                            break;
+                        case "connection":
+                            String tl = xml.getAttributeValue(null, "tl");
+                            if (tl != null) {
+                                int linkIndex = Integer.parseInt(xml.getAttributeValue(null, "linkIndex"));
+                                String lane = xml.getAttributeValue(null, "from") + "_" + xml.getAttributeValue(null, "fromLane");
+                                controlledLanes.computeIfAbsent(tl, k -> new HashMap<>()).put(linkIndex, lane);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        }
+
+        // --- Signal heads: the stop line (last point) of every controlled lane ---
+        Map<String, Integer> laneIndex = new HashMap<>();
+        for (int i = 0; i < laneIds.size(); i++) {
+            laneIndex.put(laneIds.get(i), i);
+        }
+
+        String[] tlsIds = controlledLanes.keySet().toArray(new String[0]);
+        IntList signalOffsets = new IntList();
+        FloatList signalCoords = new FloatList();
+        IntList signalLinks = new IntList();
+        signalOffsets.add(0);
+        for (String tl : tlsIds) {
+            Map<Integer, String> links = controlledLanes.get(tl);
+            Integer[] sorted = links.keySet().toArray(new Integer[0]);
+            Arrays.sort(sorted);
+            for (int link : sorted) {
+                Integer lane = laneIndex.get(links.get(link));
+                if (lane == null) continue;
+                int last = laneOffsets.get(lane + 1) - 1;
+                if (last < laneOffsets.get(lane)) continue; // Lane without shape
+                signalCoords.add(coords.get(2 * last));
+                signalCoords.add(coords.get(2 * last + 1));
+                signalLinks.add(link);
+            }
+            signalOffsets.add(signalLinks.size());
+        }
+
+        NetworkModel model = new NetworkModel(
+                laneIds.toArray(new String[0]), laneOffsets.toBuffer(), coords.toBuffer(),
+                edgeIds.toArray(new String[0]), junctionIds.toArray(new String[0]), junctionCoords.toBuffer(),
+                tlsIds, signalOffsets.toBuffer(), signalCoords.toBuffer(), signalLinks.toBuffer());
+
+        logger.info("Parsed network {}: {} lanes, {} edges, {} junctions, {} lights in {} ms",
+                netFile.getFileName(), laneIds.size(), edgeIds.size(), junctionIds.size(), tlsIds.length,
+                (System.nanoTime() - start) / 1_000_000);
+        return model;
+    }
+
+    private static InputStream open(Path file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            return new GZIPInputStream(in, 1 << 16);
+        }
+        return in;
+    }
+
+    /**
+     * Appends the points of a SUMO shape ("x1,y1 x2,y2 ..." or with z values) as x/y pairs.
+     */
+    private static void parseShape(String shape, FloatList out) {
+        if (shape == null) return;
+        int len = shape.length();
+        int pointStart = 0;
+        for (int i = 0; i <= len; i++) {
+            if (i < len && shape.charAt(i) != ' ') continue;
+            if (i > pointStart) {
+                int comma = shape.indexOf(',', pointStart);
+                int end = shape.indexOf(',', comma + 1); // Optional z value
+                if (end < 0 || end > i) end = i;
+                out.add(Float.parseFloat(shape.substring(pointStart, comma)));
+                out.add(Float.parseFloat(shape.substring(comma + 1, end)));
+            }
+            pointStart = i + 1;
+        }
+    }
+
+    // --- Growable primitive lists (avoid boxing while parsing) ---
+
+    private static final class FloatList {
+        private float[] data = new float[1024];
+        private int size = 0;
+
+        void add(float value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+        float get(int i) { return data[i]; }
+        int size() { return size; }
+        FloatBuffer toBuffer() { return FloatBuffer.wrap(Arrays.copyOf(data, size)); }
+    }
+
+    private static final class IntList {
+        private int[] data = new int[256];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+        int get(int i) { return data[i]; }
+        int size() { return size; }
+        IntBuffer toBuffer() { return IntBuffer.wrap(Arrays.copyOf(data, size)); }
+    }
+}
@@ -0,0 +1,159 @@
+package trafficsimulation;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Static geometry of a SUMO network (lanes, edges, junctions and signal heads).
+ * Coordinates are packed into flat float buffers of x/y pairs instead of one object
+ * per point, so the model can be backed by plain arrays or by a mapped file.
+ *
+ * Lane i owns the points [getLaneStart(i), getLaneEnd(i)).
+ * Light t owns the signal heads [getSignalStart(t), getSignalEnd(t)).
+ */
+public final class NetworkModel {
+
+    // --- Lanes ---
+    private final String[] laneIds;
+    private final IntBuffer laneOffsets; // laneCount + 1 entries, in points
+    private final FloatBuffer coords;    // x0, y0, x1, y1, ...
+
+    // --- Edges & Junctions ---
+    private final String[] edgeIds;      // Non-internal edges only
+    private final String[] junctionIds;
+    private final FloatBuffer junctionCoords;
+
+    // --- Traffic Light Signal Heads ---
+    private final String[] tlsIds;
+    private final IntBuffer signalOffsets; // tlsCount + 1 entries
+    private final FloatBuffer signalCoords;
+    private final IntBuffer signalLinkIndex; // Index into the light's state string
+    private final Map<String, Integer> tlsIndex = new HashMap<>();
+
+    // --- Bounds ---
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    // --- Spatial Indexes (built on first use) ---
+    private SpatialGrid laneGrid;
+    private SpatialGrid signalGrid;
+
+    public NetworkModel(String[] laneIds, IntBuffer laneOffsets, FloatBuffer coords,
+                        String[] edgeIds, String[] junctionIds, FloatBuffer junctionCoords,
+                        String[] tlsIds, IntBuffer signalOffsets, FloatBuffer signalCoords,
+                        IntBuffer signalLinkIndex) {
+        this.laneIds = laneIds;
+        this.laneOffsets = laneOffsets;
+        this.coords = coords;
+        this.edgeIds = edgeIds;
+        this.junctionIds = junctionIds;
+        this.junctionCoords = junctionCoords;
+        this.tlsIds = tlsIds;
+        this.signalOffsets = signalOffsets;
+        this.signalCoords = signalCoords;
+        this.signalLinkIndex = signalLinkIndex;
+
+        for (int t = 0; t < tlsIds.length; t++) {
+            tlsIndex.put(tlsIds[t], t);
+        }
+
+        // Bounding box of all lane points
+        float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE;
+        float x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+        int points = getPointCount();
+        for (int p = 0; p < points; p++) {
+            float x = getPointX(p);
+            float y = getPointY(p);
+            if (x < x0) x0 = x;
+            if (x > x1) x1 = x;
+            if (y < y0) y0 = y;
+            if (y > y1) y1 = y;
+        }
+        this.minX = x0;
+        this.minY = y0;
+        this.maxX = x1;
+        this.maxY = y1;
+    }
+
+    // --- Lane Geometry ---
+
+    public int getLaneCount() { return laneIds.length; }
+    public String getLaneId(int lane) { return laneIds[lane]; }
+    public int getLaneStart(int lane) { return laneOffsets.get(lane); }
+    public int getLaneEnd(int lane) { return laneOffsets.get(lane + 1); }
+    public int getPointCount() { return coords.limit() / 2; }
+    public float getPointX(int point) { return coords.get(2 * point); }
+    public float getPointY(int point) { return coords.get(2 * point + 1); }
+
+    // --- Edges & Junctions ---
+
+    public String[] getEdgeIds() { return edgeIds.clone(); }
+    public int getEdgeCount() { return edgeIds.length; }
+    public String getEdgeId(int edge) { return edgeIds[edge]; }
+    public int getJunctionCount() { return junctionIds.length; }
+    public String getJunctionId(int junction) { return junctionIds[junction]; }
+    public float getJunctionX(int junction) { return junctionCoords.get(2 * junction); }
+    public float getJunctionY(int junction) { return junctionCoords.get(2 * junction + 1); }
+
+    // --- Signal Heads ---
+
+    public int getTrafficLightCount() { return tlsIds.length; }
+    public String getTrafficLightId(int tls) { return tlsIds[tls]; }
+
+    /**
+     * Returns the index of a traffic light, or -1 if the network does not know it.
+     */
+    public int findTrafficLight(String id) {
+        Integer t = tlsIndex.get(id);
+        return t == null ? -1 : t;
+    }
+    public int getSignalStart(int tls) { return signalOffsets.get(tls); }
+    public int getSignalEnd(int tls) { return signalOffsets.get(tls + 1); }
+    public int getSignalCount() { return signalLinkIndex.limit(); }
+    public float getSignalX(int signal) { return signalCoords.get(2 * signal); }
+    public float getSignalY(int signal) { return signalCoords.get(2 * signal + 1); }
+    public int getSignalLinkIndex(int signal) { return signalLinkIndex.get(signal); }
+
+    /**
+     * Returns the index of the light that owns a signal head.
+     */
+    public int getSignalLight(int signal) {
+        // Offsets are ascending: find the last light starting at or before the signal
+        int lo = 0, hi = tlsIds.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (signalOffsets.get(mid) <= signal) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    // --- Spatial Indexes ---
+
+    /**
+     * Grid over the lane segments; query results are lane indices.
+     */
+    public synchronized SpatialGrid getLaneGrid() {
+        if (laneGrid == null) laneGrid = SpatialGrid.ofLanes(this);
+        return laneGrid;
+    }
+
+    /**
+     * Grid over the signal heads; query results are signal indices.
+     */
+    public synchronized SpatialGrid getSignalGrid() {
+        if (signalGrid == null) signalGrid = SpatialGrid.ofSignals(this);
+        return signalGrid;
+    }
+
+    // --- Bounds ---
+
+    public float getMinX() { return minX; }
+    public float getMinY() { return minY; }
+    public float getMaxX() { return maxX; }
+    public float getMaxY() { return maxY; }
+}
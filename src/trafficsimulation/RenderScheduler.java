@@ -0,0 +1,64 @@
+package trafficsimulation;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import javax.swing.Timer;
+
+/**
+ * Decouples GUI updates from the simulation step rate.
+ * Producers (the simulation thread, button handlers) only mark the view dirty; a Swing
+ * Timer renders at most once per frame interval and only if something changed. The frame
+ * always shows the latest state, intermediate steps are dropped instead of queued.
+ *
+ * Because the Timer coalesces its events, there is never more than one frame task
+ * waiting on the Event Dispatch Thread, no matter how fast steps are produced.
+ */
+public class RenderScheduler {
+
+    public static final int DEFAULT_FPS = 60;
+
+    private final AtomicBoolean dirty = new AtomicBoolean(true);
+    private final Timer timer;
+    private volatile BooleanSupplier animating = () -> false;
+    private boolean animatedLastFrame = false; // EDT only
+
+    /**
+     * @param fps   maximum number of frames per second
+     * @param frame renders the current state; runs on the EDT
+     */
+    public RenderScheduler(int fps, Runnable frame) {
+        this.timer = new Timer(Math.max(1, 1000 / fps), e -> {
+            // One more frame after an animation ends, so it settles on its final state
+            boolean animate = animating.getAsBoolean();
+            if (dirty.getAndSet(false) | animate | animatedLastFrame) {
+                frame.run();
+            }
+            animatedLastFrame = animate;
+        });
+        this.timer.setCoalesce(true);
+    }
+
+    /**
+     * Requests a frame. Cheap and safe to call from any thread, any number of times.
+     */
+    public void markDirty() {
+        dirty.set(true);
+    }
+
+    /**
+     * Keeps rendering every frame while the supplier returns true (e.g. during interpolation),
+     * even if nothing was marked dirty. Evaluated on the EDT.
+     */
+    public void setAnimation(BooleanSupplier animating) {
+        this.animating = animating;
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+}
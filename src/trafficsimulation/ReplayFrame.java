@@ -0,0 +1,107 @@
+package trafficsimulation;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Window for reviewing a recorded run: the usual map and statistics, driven by a
+ * TracePlayer instead of SUMO, with play/pause, speed and a position slider.
+ */
+public class ReplayFrame extends JFrame {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] SPEEDS = {"0.25x", "0.5x", "1x", "2x", "5x", "10x", "50x"};
+
+    private final TracePlayer player;
+    private final MapPanel mapPanel;
+    private final StatisticsPanel statisticsPanel;
+
+    // --- Controls ---
+    private final JButton playButton = new JButton("Play");
+    private final JComboBox<String> speedSelector = new JComboBox<>(SPEEDS);
+    private final JSlider positionSlider;
+    private final JLabel positionLabel = new JLabel();
+    private boolean updatingSlider = false; // Slider moved by playback, not by the user
+
+    // --- Rendering ---
+    private final RenderScheduler renderScheduler = new RenderScheduler(RenderScheduler.DEFAULT_FPS, this::renderFrame);
+    private SimulationSnapshot lastRendered;
+    private int lastRenderedPosition = -1;
+
+    public ReplayFrame(TracePlayer player, String title) {
+        this.player = player;
+
+        // 1. Window Setup
+        setTitle("Traffic Simulation - Replay " + title);
+        setSize(1000, 700);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setLayout(new BorderLayout());
+
+        // 2. Map with the statistics in the top left corner (as in the live window)
+        mapPanel = new MapPanel(player);
+        add(mapPanel, BorderLayout.CENTER);
+        statisticsPanel = new StatisticsPanel();
+        statisticsPanel.hideLiveRows(); // Step rate and edge congestion are not in the trace
+        mapPanel.setLayout(null);
+        statisticsPanel.setBounds(0, 10, 180, 180);
+        mapPanel.add(statisticsPanel);
+
+        // 3. Playback controls (bottom)
+        positionSlider = new JSlider(0, Math.max(0, player.getStepCount() - 1), 0);
+        positionSlider.setPreferredSize(new Dimension(400, positionSlider.getPreferredSize().height));
+        speedSelector.setSelectedItem("1x");
+
+        playButton.addActionListener(e -> {
+            if (player.isPlaying()) player.pause();
+            else player.play();
+        });
+        speedSelector.addActionListener(e -> {
+            String speed = (String) speedSelector.getSelectedItem();
+            player.setSpeed(Double.parseDouble(speed.substring(0, speed.length() - 1)));
+        });
+        positionSlider.addChangeListener(e -> {
+            if (!updatingSlider) player.seek(positionSlider.getValue());
+        });
+
+        JPanel bottomPanel = new JPanel(new FlowLayout());
+        bottomPanel.add(playButton);
+        bottomPanel.add(new JLabel("Speed:"));
+        bottomPanel.add(speedSelector);
+        bottomPanel.add(positionSlider);
+        bottomPanel.add(positionLabel);
+        add(bottomPanel, BorderLayout.SOUTH);
+
+        // 4. Redraw when the player shows a new step, and while cars are still moving
+        player.addListener(snap -> renderScheduler.markDirty());
+        renderScheduler.setAnimation(() -> mapPanel.isAnimating() || player.isPlaying());
+        renderScheduler.start();
+
+        setVisible(true);
+    }
+
+    /**
+     * Renders one frame with the player's current snapshot. Runs on the EDT.
+     */
+    private void renderFrame() {
+        SimulationSnapshot snap = player.getSnapshot();
+        if (snap != lastRendered) {
+            // The history lists consecutive steps; after a seek (or a restart) it starts over.
+            // Playback catching up at high speed only moves forward and keeps it.
+            int position = player.getPosition();
+            boolean followed = position == lastRenderedPosition + 1
+                    || (player.isPlaying() && position > lastRenderedPosition);
+            if (!followed) statisticsPanel.clearHistory();
+            lastRendered = snap;
+            lastRenderedPosition = position;
+            statisticsPanel.update(snap);
+
+            updatingSlider = true;
+            if (!positionSlider.getValueIsAdjusting()) positionSlider.setValue(Math.max(0, player.getPosition()));
+            updatingSlider = false;
+            positionLabel.setText(String.format("Step %d | %.1f s", snap.getStep(), snap.getTime()));
+        }
+        playButton.setText(player.isPlaying() ? "Pause" : "Play");
+        mapPanel.repaint();
+    }
+}
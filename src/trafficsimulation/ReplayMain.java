@@ -0,0 +1,62 @@
+package trafficsimulation;
+
+import java.nio.file.Paths;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Entry point for reviewing a recorded trace (see HeadlessMain --trace) without SUMO.
+ * Only the network geometry is read from the SUMO configuration.
+ *
+ * Usage:
+ *   ReplayMain --trace file [--config file]
+ */
+public class ReplayMain {
+
+    private static final Logger logger = LogManager.getLogger(ReplayMain.class);
+
+    public static void main(String[] args) {
+
+        // --- Defaults ---
+        String traceFile = null;
+        String config = SimulationManager.DEFAULT_CONFIG_FILE;
+
+        // --- Parse Arguments ---
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--trace":  traceFile = args[++i]; break;
+                    case "--config": config = args[++i]; break;
+                    default:
+                        logger.error("Unknown argument: {}", args[i]);
+                        System.exit(2);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            logger.error("Invalid arguments: {}", String.join(" ", args));
+            System.exit(2);
+        }
+        if (traceFile == null) {
+            logger.error("Usage: ReplayMain --trace file [--config file]");
+            System.exit(2);
+        }
+
+        try {
+            // 1. Network geometry (from the binary cache after the first run)
+            NetworkModel network = NetworkLoader.loadFromConfig(config);
+
+            // 2. Open the trace (reads only its index) and show the first step
+            TraceReader reader = new TraceReader(Paths.get(traceFile));
+            TracePlayer player = new TracePlayer(reader, network);
+
+            String title = Paths.get(traceFile).getFileName().toString();
+            SwingUtilities.invokeLater(() -> new ReplayFrame(player, title));
+        } catch (Exception e) {
+            logger.error("Could not open trace {}", traceFile, e);
+            System.exit(1);
+        }
+    }
+}
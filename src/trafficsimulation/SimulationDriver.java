@@ -0,0 +1,209 @@
+package trafficsimulation;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Runs all simulation work on one dedicated thread.
+ * Stepping and every other TraCI call (adding cars, switching lights, ...) is submitted
+ * to this driver, so the Swing EDT never waits for SUMO and the connection is only
+ * ever used from a single thread.
+ *
+ * Supported modes while running:
+ * - PACED:     a fixed number of steps per second
+ * - REAL_TIME: simulation time follows wall-clock time times a factor (1x, 10x, ...)
+ * - FREE_RUN:  steps as fast as SUMO can deliver them
+ */
+public class SimulationDriver {
+
+    public enum Mode { PACED, REAL_TIME, FREE_RUN }
+
+    private static final Logger logger = LogManager.getLogger(SimulationDriver.class);
+
+    // If the driver falls behind by more than this, it stops trying to catch up
+    private static final long MAX_LAG_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long THROUGHPUT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SimulationManager manager;
+    private final ScheduledExecutorService executor;
+
+    // --- Settings (written by the GUI, read by the driver thread) ---
+    private volatile Mode mode = Mode.PACED;
+    private volatile double stepsPerSecond = 10.0;
+    private volatile double realTimeFactor = 1.0;
+
+    // --- Run State (only changed on the driver thread) ---
+    private volatile boolean running = false;
+    private int stepsRemaining = -1; // -1 = run until paused
+    private long nextDeadline;
+    private ScheduledFuture<?> pendingTick;
+
+    // --- Throughput Measurement ---
+    private long windowStart;
+    private int windowSteps;
+    private volatile double measuredStepsPerSecond = 0.0;
+
+    public SimulationDriver(SimulationManager manager) {
+        this.manager = manager;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simulation-driver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // --- Controls ---
+
+    /**
+     * Queues a task for the driver thread (FIFO with the steps).
+     */
+    public void submit(Runnable task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Simulation task failed", e);
+            }
+        });
+    }
+
+    /**
+     * Starts continuous stepping with the current mode.
+     */
+    public void run() {
+        start(-1);
+    }
+
+    /**
+     * Runs the given number of steps (nothing if steps is not positive).
+     */
+    public void runSteps(int steps) {
+        if (steps <= 0) return;
+        start(steps);
+    }
+
+    private void start(int steps) {
+        submit(() -> {
+            stepsRemaining = steps;
+            if (running) return; // Already ticking, only the limit changes
+
+            running = true;
+            nextDeadline = System.nanoTime();
+            windowStart = nextDeadline;
+            windowSteps = 0;
+            pendingTick = executor.schedule(this::tick, 0, TimeUnit.NANOSECONDS);
+            logger.info("Simulation running ({} mode)", mode);
+        });
+    }
+
+    /**
+     * Stops continuous stepping after the current step.
+     */
+    public void pause() {
+        submit(this::stopTicking);
+    }
+
+    /**
+     * Performs exactly one step (ignored while running).
+     */
+    public void step() {
+        submit(() -> {
+            if (!running) manager.nextStep();
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // --- Settings ---
+
+    public void setPaced(double stepsPerSecond) {
+        this.stepsPerSecond = stepsPerSecond;
+        this.mode = Mode.PACED;
+    }
+
+    public void setRealTime(double factor) {
+        this.realTimeFactor = factor;
+        this.mode = Mode.REAL_TIME;
+    }
+
+    public void setFreeRun() {
+        this.mode = Mode.FREE_RUN;
+    }
+
+    public Mode getMode() { return mode; }
+    public boolean isRunning() { return running; }
+
+    /**
+     * Steps per second achieved during the last measurement window.
+     */
+    public double getMeasuredStepsPerSecond() { return measuredStepsPerSecond; }
+
+    // --- Driver Thread ---
+
+    private void tick() {
+        pendingTick = null;
+        if (!running) return;
+
+        manager.nextStep();
+        recordStep();
+
+        if (stepsRemaining > 0 && --stepsRemaining == 0) {
+            stopTicking();
+            return;
+        }
+        scheduleNext();
+    }
+
+    private void scheduleNext() {
+        if (mode == Mode.FREE_RUN) {
+            // Queued behind already submitted tasks, so commands still get through
+            pendingTick = executor.schedule(this::tick, 0, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        // Deadlines advance by a fixed period, so delays of single steps do not accumulate
+        long now = System.nanoTime();
+        nextDeadline += periodNanos();
+        if (now - nextDeadline > MAX_LAG_NANOS) {
+            nextDeadline = now; // Too far behind (SUMO slower than target), drop the backlog
+        }
+        pendingTick = executor.schedule(this::tick, Math.max(0, nextDeadline - now), TimeUnit.NANOSECONDS);
+    }
+
+    private long periodNanos() {
+        if (mode == Mode.REAL_TIME) {
+            return (long) (manager.getStepLength() * 1e9 / realTimeFactor);
+        }
+        return (long) (1e9 / stepsPerSecond);
+    }
+
+    private void recordStep() {
+        windowSteps++;
+        long elapsed = System.nanoTime() - windowStart;
+        if (elapsed >= THROUGHPUT_WINDOW_NANOS) {
+            measuredStepsPerSecond = windowSteps * 1e9 / elapsed;
+            logger.debug("Throughput: {} steps/s ({} mode)", String.format("%.1f", measuredStepsPerSecond), mode);
+            windowStart += elapsed;
+            windowSteps = 0;
+        }
+    }
+
+    private void stopTicking() {
+        if (!running) return;
+        running = false;
+        stepsRemaining = -1;
+        if (pendingTick != null) {
+            pendingTick.cancel(false);
+            pendingTick = null;
+        }
+        logger.info("Simulation paused at step {} ({} steps/s)",
+                manager.getStepCounter(), String.format("%.1f", measuredStepsPerSecond));
+    }
+}
@@ -0,0 +1,8 @@
+package trafficsimulation;
+
+/**
+ * Notified after every simulation step with the snapshot of that step.
+ */
+interface SimulationListener {
+    void onStepCompleted(SimulationSnapshot snapshot);
+}
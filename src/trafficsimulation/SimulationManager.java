@@ -1,80 +1,232 @@
 package trafficsimulation;
 
 import de.tudresden.sumo.cmd.Simulation;
-import de.tudresden.sumo.cmd.Vehicle;
-import de.tudresden.sumo.objects.SumoStringList;
 import it.polito.appeal.traci.SumoTraciConnection;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import javax.swing.*;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
-interface SimulationListener {
-    void onStepCompleted();
-}
-
-public class SimulationManager {
+public class SimulationManager implements SnapshotSource {
 
     // --- Configuration Constants ---
     // Path to the SUMO configuration file
-    private static final String CONFIG_FILE = "SumoConfig/osm.sumocfg";
-    private static final String SUMO_BIN = "sumo-gui";
+    public static final String DEFAULT_CONFIG_FILE = "SumoConfig/osm.sumocfg";
+    public static final String DEFAULT_SUMO_BIN = "sumo-gui";
+    public static final String DEFAULT_EXPORT_FILE = "simulation.csv";
+
+    // --- Configuration (GUI uses the defaults, headless runs pass their own) ---
+    private final String sumoBin;
+    private final String configFile;
+    private String exportFile = DEFAULT_EXPORT_FILE;
+    private boolean exportGzip = false;
+    private long exportRotateRows = 0;
+    private String traceFile; // null = no trajectory recording
 
     private static final Logger logger = LogManager.getLogger(SimulationManager.class);
 
     // --- Core Connection Fields ---
-    private SumoTraciConnection conn;
+    // Written on the driver thread, read by the GUI
+    private volatile SumoTraciConnection conn;
     private int stepCounter = 0;
+    private double stepLength = 1.0; // Seconds of simulation time per step
+
+    // Owns the thread on which all TraCI work happens
+    private final SimulationDriver driver = new SimulationDriver(this);
     
+    // --- Static Network (parsed from the net file, independent of SUMO) ---
+    private CompletableFuture<NetworkModel> networkFuture;
+
     // --- Data Repositories ---
-    private VehicleRepository vehicleRepo;
-    private TrafficLightRepository lightRepo;
+    private volatile VehicleRepository vehicleRepo;
+    private volatile TrafficLightRepository lightRepo;
+    private volatile EdgeMetricsRepository edgeRepo;
 
     private List<SimulationListener> listeners = new ArrayList<>();
 
+    // --- Pipelining ---
+    // 0 = listeners and export run inside nextStep; N > 0 = they run on a consumer
+    // thread while SUMO already computes the next step, with at most N steps queued
+    private int pipelineDepth = 0;
+    private ExecutorService consumer;
+    private Semaphore pipelineSlots;
+
+    // --- Published State ---
+    // Replaced (never modified) at the end of every step; views read it lock-free
+    private volatile SimulationSnapshot snapshot = SimulationSnapshot.EMPTY;
+    private volatile boolean lightStatesDirty = true;
+
+    public SimulationManager() {
+        this(DEFAULT_SUMO_BIN, DEFAULT_CONFIG_FILE);
+    }
+
+    /**
+     * @param sumoBin    SUMO executable ("sumo-gui" or plain "sumo" for batch runs)
+     * @param configFile path to the .sumocfg file
+     */
+    public SimulationManager(String sumoBin, String configFile) {
+        this.sumoBin = sumoBin;
+        this.configFile = configFile;
+    }
+
+    public void setExportFile(String exportFile) {
+        this.exportFile = exportFile;
+    }
+
+    /**
+     * Records the full vehicle state of every step into a binary trace (null = off).
+     * Must be called before the simulation starts.
+     */
+    public void setTraceFile(String traceFile) {
+        this.traceFile = traceFile;
+    }
+
+    /**
+     * Compresses the step log and/or starts a new file every rotateRows rows (0 = one file).
+     * Must be called before the simulation starts.
+     */
+    public void setExportOptions(boolean gzip, long rotateRows) {
+        this.exportGzip = gzip;
+        this.exportRotateRows = rotateRows;
+    }
+
+    /**
+     * Enables pipelined stepping (depth > 0) or sequential stepping (depth 0).
+     * Must be called before the simulation starts stepping.
+     */
+    public void setPipelineDepth(int depth) {
+        this.pipelineDepth = Math.max(0, depth);
+        if (pipelineDepth > 0) {
+            pipelineSlots = new Semaphore(pipelineDepth);
+            consumer = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "simulation-consumer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
     public void addListener(SimulationListener listener) {
         listeners.add(listener);
     }
 
     /**
      * Initializes the connection to SUMO and sets up data repositories.
+     * Like all TraCI work, this runs on the driver thread (see getDriver()).
+     *
+     * @return false if SUMO could not be started; connection and repositories stay null
      */
-    public void startSimulation() {
+    public boolean startSimulation() {
         try {
             //System.out.println("Starting SUMO Simulation...");
             logger.info("Starting SUMO Simulation...");
+
+            // 0. Parse the network file in parallel with the SUMO launch
+            loadNetworkAsync();
             
             // 1. Establish connection to SUMO
-            conn = new SumoTraciConnection(SUMO_BIN, CONFIG_FILE);
-            conn.addOption("start", "true"); // Auto-start the simulation
-            conn.runServer();
+            // (only kept once the server runs, so a failed launch leaves no connection behind)
+            SumoTraciConnection connection = new SumoTraciConnection(sumoBin, configFile);
+            connection.addOption("start", "true"); // Auto-start the simulation
+            connection.runServer();
+            conn = connection;
+            stepLength = (double) conn.do_job_get(Simulation.getDeltaT());
 
             // 2. Initialize Repositories (Must be done after connection is active)
+            NetworkModel network = awaitNetwork();
             vehicleRepo = new VehicleRepository(conn);
-            lightRepo = new TrafficLightRepository(conn);
+            if (network != null) {
+                vehicleRepo.setEligibleEdges(network.getEdgeIds());
+            }
+            lightRepo = new TrafficLightRepository(conn, network);
+            lightRepo.addListener(light -> lightStatesDirty = true);
+            edgeRepo = new EdgeMetricsRepository(conn, network);
+            exLog = new LogExport(exportFile, exportGzip, exportRotateRows);
+            if (traceFile != null) {
+                try {
+                    trace = new TraceWriter(traceFile);
+                } catch (IOException e) {
+                    logger.error("Could not create trace file {}, recording disabled", traceFile, e);
+                }
+            }
             
             //System.out.println("SUMO is running. Repositories initialized.");
             logger.info("SUMO started successfully. Repositories initialized.");
+            return true;
             
         } catch (Exception e) {
             //System.err.println("Error starting SUMO:");
             //e.printStackTrace();
             logger.error("Critical Error starting SUMO: ", e);
+            if (conn != null && !conn.isClosed()) {
+                conn.close();
+            }
+            conn = null;
+            vehicleRepo = null;
+            lightRepo = null;
+            edgeRepo = null;
+            return false;
         }
     }
     
-    //initialisiert LogExport durch einen (parameterlosen) Konstruktor
-    private LogExport exLog = new LogExport();
+    /**
+     * Starts parsing the network of the configured .sumocfg on a background thread
+     * (only once). The returned future completes as soon as the geometry is available.
+     */
+    public synchronized CompletableFuture<NetworkModel> loadNetworkAsync() {
+        if (networkFuture == null) {
+            networkFuture = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return NetworkLoader.loadFromConfig(configFile);
+                } catch (Exception e) {
+                    logger.error("Failed to load network of {}", configFile, e);
+                    return null;
+                }
+            });
+        }
+        return networkFuture;
+    }
+
+    /**
+     * Returns the parsed network, or null while it is still loading.
+     */
+    @Override
+    public synchronized NetworkModel getNetwork() {
+        return networkFuture == null ? null : networkFuture.getNow(null);
+    }
+
+    private NetworkModel awaitNetwork() {
+        return loadNetworkAsync().join();
+    }
+    
+    // Step log, streamed to the export file while the simulation runs (opened in startSimulation)
+    private LogExport exLog;
+
+    // Binary trajectory trace (see TraceWriter), only when a trace file is set
+    private TraceWriter trace;
 
 
     /**
      * Advances the simulation by one step and updates all entities.
+     * Called on the driver thread.
      */
     public void nextStep() {
         try {
+            // 0. Send vehicles queued since the last step in one batch
+            if (vehicleRepo != null) {
+                vehicleRepo.flushInsertions();
+            }
+
             // 1. Advance SUMO internal physics
             conn.do_timestep();
             
@@ -87,21 +239,36 @@ public class SimulationManager {
             if (vehicleRepo != null) {
                 vehicleRepo.updateVehicles();
             }
+
+            // Edge metrics arrived with the step response, only the ranking is left
+            if (edgeRepo != null) {
+                edgeRepo.updateMetrics();
+            }
             
             // 4. Update Counters & Logs
             stepCounter++; 
-            double time = (double) conn.do_job_get(Simulation.getTime());
+            double time = vehicleRepo.getSimulationTime(); // Subscribed, no extra round trip
             //System.out.println("Step: " + stepCounter + " | Sim Time: " + time);
             logger.debug("Step: {} | Sim Time: {}", stepCounter, time);
             
-            
+            // 5. Publish the frozen state for the views
+            publishSnapshot(time);
+            SimulationSnapshot snap = snapshot;
             int vehicleCounter = vehicleRepo.getvehicleCounter();
-            double co2= getCurrentCo2Emission();
-            // CSV Log-Eintrag
-            //exLog.logStep(stepCounter, time); //exLog.logStep(stepCounter, time, vehicleCount); wenn vehicleCount implementiert ist
-            // 5. Update Listeners
-            notifyListeners();
-            exLog.logStep(stepCounter, time, vehicleCounter);
+
+            // 6. Listeners & CSV log, either now or overlapped with the next step
+            if (pipelineDepth > 0) {
+                pipelineSlots.acquire(); // Blocks if the consumer is N steps behind
+                consumer.execute(() -> {
+                    try {
+                        processStep(snap, vehicleCounter);
+                    } finally {
+                        pipelineSlots.release();
+                    }
+                });
+            } else {
+                processStep(snap, vehicleCounter);
+            }
 
         } catch (Exception e) {
             //e.printStackTrace();
@@ -109,24 +276,93 @@ public class SimulationManager {
         }
     }
 
+    /**
+     * Work that only needs the frozen step result and no TraCI access.
+     * Runs on the consumer thread when pipelining is enabled.
+     */
+    private void processStep(SimulationSnapshot snap, int vehicleCounter) {
+        try {
+            notifyListeners(snap);
+            // CSV Log-Eintrag
+            if (exLog != null) {
+                exLog.logStep(snap.getStep(), snap.getTime(), vehicleCounter,
+                        snap.getAverageSpeed(), snap.getTotalCo2());
+            }
+            if (trace != null) {
+                trace.record(snap);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing step {}:", snap.getStep(), e);
+        }
+    }
+
+    /**
+     * Waits until the consumer has processed all queued steps.
+     */
+    private void drainPipeline() {
+        if (pipelineDepth == 0) return;
+        try {
+            pipelineSlots.acquire(pipelineDepth);
+            pipelineSlots.release(pipelineDepth);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Safely closes the SUMO connection.
      */
     public void stopSimulation() {
         if (conn != null && !conn.isClosed()) {
             conn.close();
+            drainPipeline();
             //System.out.println("Simulation stopped.");
             logger.warn("Simulation stopped by user.");
             
-         // CSV Export
-            CsvExporter.export("simulation.csv", exLog.getRows());
-            logger.info("Simulation data exported to simulation.csv");
+            // Write the last buffered rows of the step log
+            if (exLog != null) {
+                exLog.close();
+            }
+            if (trace != null) {
+                trace.close();
+            }
+        }
+    }
+
+    /**
+     * Freezes the repository state into a new snapshot and publishes it.
+     * The light state map is only rebuilt when a light actually changed.
+     */
+    private void publishSnapshot(double time) {
+        Map<String, String> lightStates = snapshot.getLightStates();
+        if (lightStatesDirty && lightRepo != null) {
+            Map<String, String> states = new HashMap<>();
+            for (TrafficLightWrap tl : lightRepo.getList()) {
+                states.put(tl.getID(), tl.getCurrentState());
+            }
+            lightStates = Collections.unmodifiableMap(states);
+            lightStatesDirty = false;
         }
+
+        int active = vehicleRepo != null ? vehicleRepo.getActiveVehicleCount() : 0;
+        snapshot = SimulationSnapshot.capture(stepCounter, time, active, vehicleRepo, lightStates, snapshot);
     }
 
-    private void notifyListeners() {
+    /**
+     * Switches a traffic light to its next phase; the new state is visible in the next snapshot.
+     */
+    public void switchLight(String lightId) {
+        if (lightRepo == null) return;
+        TrafficLightWrap tl = lightRepo.findlight(lightId);
+        if (tl != null) {
+            tl.switchToNextPhase();
+            lightStatesDirty = true;
+        }
+    }
+
+    private void notifyListeners(SimulationSnapshot snap) {
         for (SimulationListener listener : listeners) {
-                listener.onStepCompleted();
+                listener.onStepCompleted(snap);
         }
     }
 
@@ -139,31 +375,52 @@ public class SimulationManager {
     public VehicleRepository getRepository() {
         return vehicleRepo;
     }
+
+    public EdgeMetricsRepository getEdgeMetricsRepository() {
+        return edgeRepo;
+    }
     
     public SumoTraciConnection getConnection() {
         return this.conn;
     }
 
+    public SimulationDriver getDriver() {
+        return driver;
+    }
+
+    public double getStepLength() {
+        return stepLength;
+    }
 
 
+
+    /**
+     * Returns the state published at the end of the latest step.
+     */
+    @Override
+    public SimulationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * Returns the number of currently active vehicles in the simulation.
      */
     public int getActiveVehicleCount() {
-        try {
-            SumoStringList ids = (SumoStringList) conn.do_job_get(Vehicle.getIDList());
-            return ids.size();
-        } catch (Exception e) {
-            return 0;
-        }
+        return snapshot.getActiveVehicleCount();
     }
 
     /**
      * Returns total CO2 emission of the current simulation step.
      */
     public double getCurrentCo2Emission() {
-        if (vehicleRepo == null) return 0.0;
-        return vehicleRepo.getTotalCo2Emission();
+        return snapshot.getTotalCo2();
+    }
+
+    /**
+     * Returns the CO2 breakdown (per edge, per type) of the current step, computed once per step.
+     */
+    public EmissionsAggregator getCurrentEmissions() {
+        return snapshot.getEmissions();
     }
 
     public int getStepCounter() {
@@ -0,0 +1,246 @@
+package trafficsimulation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frozen state of the simulation at the end of one step.
+ * Built once by the simulation thread and published through a single volatile
+ * reference in SimulationManager. Views read it without locks and without copying;
+ * it is never modified after construction.
+ *
+ * Vehicles are stored as parallel arrays; index i describes the same vehicle in every array.
+ * Only vehicles that are already on the road (have a position) are included.
+ */
+public final class SimulationSnapshot {
+
+    public static final SimulationSnapshot EMPTY = new SimulationSnapshot(
+            0, 0.0, 0, new String[0], new String[0], new int[0], new String[0],
+            new int[0], new double[0], new double[0], new double[0], new double[0], new double[0],
+            Collections.emptyMap(), null);
+
+    // Steps further apart than this (paused, single stepping) are not animated
+    private static final long INTERPOLATION_LIMIT_NANOS = 2_000_000_000L;
+
+    // --- Step Data ---
+    private final int step;
+    private final double time;
+    private final int activeVehicleCount; // All vehicles in SUMO, not only tracked ones
+
+    // --- Vehicle Columns ---
+    private final String[] ids;
+    private final String[] imageNames;
+    private final int[] edgeIndex;     // Into edgeNames, -1 = no edge yet
+    private final String[] edgeNames;  // Append-only edge dictionary (may have null capacity at the end)
+    private final int[] slots; // Stable per vehicle between steps (state store slot)
+    private final int[] indexBySlot;
+    private final double[] x;
+    private final double[] y;
+    private final double[] angle;
+    private final double[] speed;
+    private final double[] co2;
+
+    // --- Interpolation (state of the same vehicles in the previous snapshot) ---
+    private final double[] prevX;
+    private final double[] prevY;
+    private final double[] prevAngle;
+    private final long publishedNanos;
+    private final long previousPublishedNanos;
+
+    // --- Aggregates ---
+    private final EmissionsAggregator emissions;
+    private final double averageSpeed;
+
+    // --- Spatial Index over the vehicle positions (rebuilt with every snapshot) ---
+    private final SpatialGrid vehicleGrid;
+
+    // --- Traffic Lights (ID -> state string, unmodifiable) ---
+    private final Map<String, String> lightStates;
+
+    SimulationSnapshot(int step, double time, int activeVehicleCount,
+                       String[] ids, String[] imageNames, int[] edgeIndex, String[] edgeNames, int[] slots,
+                       double[] x, double[] y, double[] angle, double[] speed, double[] co2,
+                       Map<String, String> lightStates, SimulationSnapshot previous) {
+        this.step = step;
+        this.time = time;
+        this.activeVehicleCount = activeVehicleCount;
+        this.ids = ids;
+        this.imageNames = imageNames;
+        this.edgeIndex = edgeIndex;
+        this.edgeNames = edgeNames;
+        this.slots = slots;
+        this.x = x;
+        this.y = y;
+        this.angle = angle;
+        this.speed = speed;
+        this.co2 = co2;
+        this.lightStates = lightStates;
+
+        double speedSum = 0.0;
+        for (int i = 0; i < ids.length; i++) {
+            speedSum += speed[i];
+        }
+        this.emissions = ids.length == 0 ? EmissionsAggregator.EMPTY
+                : new EmissionsAggregator(co2, edgeIndex, edgeNames, imageNames, ids);
+        this.averageSpeed = ids.length == 0 ? 0.0 : speedSum / ids.length;
+        this.vehicleGrid = ids.length == 0 ? SpatialGrid.EMPTY : SpatialGrid.ofPoints(x, y, ids.length);
+
+        // Reverse lookup slot -> index
+        int maxSlot = -1;
+        for (int slot : slots) maxSlot = Math.max(maxSlot, slot);
+        this.indexBySlot = new int[maxSlot + 1];
+        Arrays.fill(indexBySlot, -1);
+        for (int i = 0; i < slots.length; i++) indexBySlot[slots[i]] = i;
+
+        // Match every vehicle with its entry in the previous snapshot (new vehicles start in place)
+        this.publishedNanos = System.nanoTime();
+        if (previous == null || previous.ids.length == 0 || ids.length == 0) {
+            this.prevX = x;
+            this.prevY = y;
+            this.prevAngle = angle;
+        } else {
+            this.prevX = new double[ids.length];
+            this.prevY = new double[ids.length];
+            this.prevAngle = new double[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                int j = previous.indexOfSlot(slots[i]);
+                // Slots are reused, so the ID has to match as well
+                boolean known = j >= 0 && previous.ids[j].equals(ids[i]);
+                prevX[i] = known ? previous.x[j] : x[i];
+                prevY[i] = known ? previous.y[j] : y[i];
+                prevAngle[i] = known ? previous.angle[j] : angle[i];
+            }
+        }
+        this.previousPublishedNanos = previous != null ? previous.publishedNanos : publishedNanos;
+    }
+
+    /**
+     * Copies the current repository state into a new snapshot.
+     * Must be called on the simulation thread (the only writer of the repositories).
+     */
+    static SimulationSnapshot capture(int step, double time, int activeVehicleCount,
+                                      VehicleRepository vehicleRepo, Map<String, String> lightStates,
+                                      SimulationSnapshot previous) {
+        if (vehicleRepo == null) {
+            return new SimulationSnapshot(step, time, activeVehicleCount, new String[0], new String[0],
+                    new int[0], new String[0], new int[0], new double[0], new double[0], new double[0], new double[0],
+                    new double[0], lightStates, previous);
+        }
+
+        VehicleStateStore store = vehicleRepo.getStateStore();
+        List<VehicleWrap> cars = vehicleRepo.getList();
+
+        // 1. Count vehicles that are already on the road
+        int n = 0;
+        for (VehicleWrap car : cars) {
+            if (store.hasPosition(car.getSlot())) n++;
+        }
+
+        // 2. Copy their state column by column
+        String[] ids = new String[n];
+        String[] imageNames = new String[n];
+        int[] edgeIndex = new int[n];
+        int[] slots = new int[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] angle = new double[n];
+        double[] speed = new double[n];
+        double[] co2 = new double[n];
+
+        int i = 0;
+        for (VehicleWrap car : cars) {
+            int slot = car.getSlot();
+            if (!store.hasPosition(slot)) continue;
+            ids[i] = car.getID();
+            imageNames[i] = car.getImageName();
+            edgeIndex[i] = store.getEdgeIndex(slot);
+            slots[i] = slot;
+            x[i] = store.getX(slot);
+            y[i] = store.getY(slot);
+            angle[i] = store.getAngle(slot);
+            speed[i] = store.getSpeed(slot);
+            co2[i] = store.getCo2(slot);
+            i++;
+        }
+
+        return new SimulationSnapshot(step, time, activeVehicleCount,
+                ids, imageNames, edgeIndex, store.getEdgeNames(), slots, x, y, angle, speed, co2, lightStates, previous);
+    }
+
+    // --- Getters ---
+
+    public int getStep() { return step; }
+    public double getTime() { return time; }
+    public int getActiveVehicleCount() { return activeVehicleCount; }
+    public int getVehicleCount() { return ids.length; }
+
+    public String getId(int i) { return ids[i]; }
+    public String getImageName(int i) { return imageNames[i]; }
+    public String getEdge(int i) { return edgeIndex[i] < 0 ? null : edgeNames[edgeIndex[i]]; }
+    public int getEdgeIndex(int i) { return edgeIndex[i]; }
+
+    /**
+     * Edge dictionary the edge indices refer to. Shared, must not be modified.
+     */
+    public String[] getEdgeNames() { return edgeNames; }
+    public double getX(int i) { return x[i]; }
+    public double getY(int i) { return y[i]; }
+    public double getAngle(int i) { return angle[i]; }
+    public double getSpeed(int i) { return speed[i]; }
+    public double getCo2(int i) { return co2[i]; }
+    public int getSlot(int i) { return slots[i]; }
+
+    /**
+     * Returns the index of the vehicle in the given slot, or -1 if it is not in this snapshot.
+     */
+    public int indexOfSlot(int slot) {
+        return slot >= 0 && slot < indexBySlot.length ? indexBySlot[slot] : -1;
+    }
+
+    // --- Interpolation ---
+
+    /**
+     * Progress from the previous to this snapshot for a frame drawn at nowNanos (0..1).
+     * The view runs one step behind: it reaches this snapshot after one step interval.
+     */
+    public double getInterpolation(long nowNanos) {
+        long interval = publishedNanos - previousPublishedNanos;
+        if (interval <= 0 || interval > INTERPOLATION_LIMIT_NANOS) return 1.0;
+        double alpha = (double) (nowNanos - publishedNanos) / interval;
+        return alpha < 0 ? 0 : (alpha > 1 ? 1 : alpha);
+    }
+
+    public double getX(int i, double alpha) { return prevX[i] + (x[i] - prevX[i]) * alpha; }
+    public double getY(int i, double alpha) { return prevY[i] + (y[i] - prevY[i]) * alpha; }
+
+    /**
+     * Interpolated angle in degrees, turning the short way round.
+     */
+    public double getAngle(int i, double alpha) {
+        double delta = ((angle[i] - prevAngle[i]) % 360 + 540) % 360 - 180;
+        return prevAngle[i] + delta * alpha;
+    }
+
+    public double getTotalCo2() { return emissions.getTotal(); }
+
+    /**
+     * CO2 of this step with per-edge and per-type breakdowns, computed once at construction.
+     */
+    public EmissionsAggregator getEmissions() { return emissions; }
+    public double getAverageSpeed() { return averageSpeed; }
+
+    /**
+     * Grid over the vehicle positions; query results are vehicle indices.
+     */
+    public SpatialGrid getVehicleGrid() { return vehicleGrid; }
+
+    /**
+     * Returns the state string of a light, or null if unknown.
+     */
+    public String getLightState(String lightId) {
+        return lightStates.get(lightId);
+    }
+    public Map<String, String> getLightStates() { return lightStates; }
+}
@@ -0,0 +1,10 @@
+package trafficsimulation;
+
+/**
+ * Provides the current snapshot and the network to the views: the live simulation
+ * (SimulationManager) or a recorded trace (TracePlayer).
+ */
+interface SnapshotSource {
+    SimulationSnapshot getSnapshot();
+    NetworkModel getNetwork();
+}
@@ -0,0 +1,210 @@
+package trafficsimulation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Uniform grid over world coordinates for viewport culling.
+ * Stored in CSR form: the items of cell c are entries[cellStart[c] .. cellStart[c + 1]),
+ * so a grid is two int arrays and is built in two linear passes (count, then fill).
+ * That keeps the per-step rebuild for vehicles cheap.
+ *
+ * Items with an extent (lane segments) are registered in every cell they overlap;
+ * queries then report each item only once. Results are candidates: an item in a cell
+ * touching the query rectangle may itself lie slightly outside of it.
+ * Grids are immutable after construction and can be queried from any thread.
+ */
+public final class SpatialGrid {
+
+    // Upper bound for the cell count, so sparse outliers can not blow up memory
+    private static final int MAX_CELLS = 1 << 20;
+
+    public static final SpatialGrid EMPTY = new SpatialGrid(0, new double[0], new double[0],
+            new double[0], new double[0], new int[0]);
+
+    private final double originX;
+    private final double originY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    private final int[] cellStart; // cols * rows + 1 entries
+    private final int[] entries;   // Item IDs, grouped by cell
+    private final int itemCount;
+    private final boolean needsDedup;
+
+    /**
+     * Builds a grid from entries given as bounding boxes.
+     * Entry e covers [minX[e], maxX[e]] x [minY[e], maxY[e]] and belongs to item[e];
+     * several entries may belong to the same item.
+     */
+    private SpatialGrid(int itemCount, double[] minX, double[] minY, double[] maxX, double[] maxY, int[] item) {
+        this.itemCount = itemCount;
+        int n = item.length;
+
+        // 1. Extent of all entries
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE;
+        double x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        for (int e = 0; e < n; e++) {
+            if (minX[e] < x0) x0 = minX[e];
+            if (minY[e] < y0) y0 = minY[e];
+            if (maxX[e] > x1) x1 = maxX[e];
+            if (maxY[e] > y1) y1 = maxY[e];
+        }
+        if (n == 0) {
+            x0 = y0 = 0;
+            x1 = y1 = 1;
+        }
+
+        // 2. Roughly one entry per cell
+        double width = Math.max(x1 - x0, 1e-3);
+        double height = Math.max(y1 - y0, 1e-3);
+        double size = Math.sqrt(width * height / Math.max(n, 1));
+        size = Math.max(size, Math.sqrt(width * height / MAX_CELLS));
+        size = Math.max(size, Math.max(width, height) / MAX_CELLS);
+        this.originX = x0;
+        this.originY = y0;
+        this.cellSize = size;
+        this.cols = Math.max(1, (int) Math.min(MAX_CELLS, Math.floor(width / size) + 1));
+        this.rows = Math.max(1, Math.min(MAX_CELLS / cols, (int) Math.floor(height / size) + 1));
+
+        // 3. Count the entries per cell
+        int cells = cols * rows;
+        int[] start = new int[cells + 1];
+        boolean spans = false;
+        for (int e = 0; e < n; e++) {
+            int cx0 = col(minX[e]), cx1 = col(maxX[e]);
+            int cy0 = row(minY[e]), cy1 = row(maxY[e]);
+            if (cx0 != cx1 || cy0 != cy1) spans = true;
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    start[cy * cols + cx + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            start[c + 1] += start[c];
+        }
+
+        // 4. Fill the cells
+        int[] fill = Arrays.copyOf(start, cells);
+        int[] out = new int[start[cells]];
+        for (int e = 0; e < n; e++) {
+            int cx0 = col(minX[e]), cx1 = col(maxX[e]);
+            int cy0 = row(minY[e]), cy1 = row(maxY[e]);
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    out[fill[cy * cols + cx]++] = item[e];
+                }
+            }
+        }
+        this.cellStart = start;
+        this.entries = out;
+        this.needsDedup = spans || n != itemCount;
+    }
+
+    // --- Factories ---
+
+    /**
+     * Grid over points; item i is the point (x[i], y[i]).
+     */
+    public static SpatialGrid ofPoints(double[] x, double[] y, int count) {
+        int[] item = new int[count];
+        for (int i = 0; i < count; i++) item[i] = i;
+        // A point is its own bounding box (the constructor does not keep the arrays)
+        return new SpatialGrid(count, x, y, x, y, item);
+    }
+
+    /**
+     * Grid over the lanes of a network, registered per segment. Items are lane indices.
+     */
+    public static SpatialGrid ofLanes(NetworkModel network) {
+        int lanes = network.getLaneCount();
+        int segments = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            segments += Math.max(0, network.getLaneEnd(lane) - network.getLaneStart(lane) - 1);
+        }
+
+        double[] minX = new double[segments], minY = new double[segments];
+        double[] maxX = new double[segments], maxY = new double[segments];
+        int[] item = new int[segments];
+        int e = 0;
+        for (int lane = 0; lane < lanes; lane++) {
+            for (int p = network.getLaneStart(lane); p < network.getLaneEnd(lane) - 1; p++) {
+                float ax = network.getPointX(p), ay = network.getPointY(p);
+                float bx = network.getPointX(p + 1), by = network.getPointY(p + 1);
+                minX[e] = Math.min(ax, bx);
+                minY[e] = Math.min(ay, by);
+                maxX[e] = Math.max(ax, bx);
+                maxY[e] = Math.max(ay, by);
+                item[e++] = lane;
+            }
+        }
+        return new SpatialGrid(lanes, minX, minY, maxX, maxY, item);
+    }
+
+    /**
+     * Grid over the signal heads of a network. Items are signal indices.
+     */
+    public static SpatialGrid ofSignals(NetworkModel network) {
+        int n = network.getSignalCount();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int s = 0; s < n; s++) {
+            x[s] = network.getSignalX(s);
+            y[s] = network.getSignalY(s);
+        }
+        return ofPoints(x, y, n);
+    }
+
+    // --- Queries ---
+
+    /**
+     * Returns the items that may intersect the given world rectangle (each at most once).
+     */
+    public int[] query(double minX, double minY, double maxX, double maxY) {
+        if (entries.length == 0 || maxX < minX || maxY < minY) return new int[0];
+        if (maxX < originX || maxY < originY
+                || minX > originX + cols * cellSize || minY > originY + rows * cellSize) return new int[0];
+        int cx0 = col(minX), cx1 = col(maxX);
+        int cy0 = row(minY), cy1 = row(maxY);
+
+        // Everything visible: no need to walk the cells
+        if (cx0 == 0 && cy0 == 0 && cx1 == cols - 1 && cy1 == rows - 1 && !needsDedup) {
+            int[] all = new int[itemCount];
+            for (int i = 0; i < itemCount; i++) all[i] = i;
+            return all;
+        }
+
+        BitSet seen = needsDedup ? new BitSet(itemCount) : null;
+        int[] result = new int[16];
+        int n = 0;
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cy * cols + cx;
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int item = entries[k];
+                    if (seen != null) {
+                        if (seen.get(item)) continue;
+                        seen.set(item);
+                    }
+                    if (n == result.length) result = Arrays.copyOf(result, n * 2);
+                    result[n++] = item;
+                }
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    public int getItemCount() { return itemCount; }
+
+    // Coordinates outside the grid are clamped to the border cells
+    private int col(double x) {
+        int c = (int) Math.floor((x - originX) / cellSize);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - originY) / cellSize);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+}
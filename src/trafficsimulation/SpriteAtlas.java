@@ -0,0 +1,83 @@
+package trafficsimulation;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Vehicle sprites pre-rendered at quantized angles and at the current pixel size.
+ * Drawing a car then becomes one unscaled, untransformed drawImage instead of a
+ * rotate + scale of the source PNG, which is the slowest path in Java2D.
+ *
+ * Sprites are rendered lazily on first use. Changing the pixel size (zoom) drops
+ * the whole atlas, so only sizes and angles that are actually on screen cost memory.
+ */
+public class SpriteAtlas {
+
+    public static final int ANGLE_BUCKETS = 64;
+
+    // Larger sprites are rare (few cars on screen) and would use a lot of memory
+    public static final int MAX_PIXEL_SIZE = 96;
+
+    private final Map<String, Image> sources;
+    private final Map<String, BufferedImage[]> sprites = new HashMap<>();
+    private int pixelSize = -1;
+    private int spriteSize;
+
+    public SpriteAtlas(Map<String, Image> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * Sets the size cars are drawn with; clears the atlas if it changed.
+     */
+    public void setPixelSize(int pixelSize) {
+        if (pixelSize == this.pixelSize) return;
+        this.pixelSize = pixelSize;
+        // Room for the rotated square plus one pixel of antialiasing on each side
+        this.spriteSize = (int) Math.ceil(pixelSize * Math.sqrt(2)) + 2;
+        sprites.clear();
+    }
+
+    /**
+     * Side length of every sprite; a sprite is drawn centered on the vehicle.
+     */
+    public int getSpriteSize() { return spriteSize; }
+
+    /**
+     * Returns the sprite of an image for the given SUMO angle (degrees), or null if the
+     * image is unknown.
+     */
+    public BufferedImage get(String name, double angle) {
+        Image source = sources.get(name);
+        if (source == null) return null;
+
+        int bucket = (int) Math.round(angle / 360.0 * ANGLE_BUCKETS) % ANGLE_BUCKETS;
+        if (bucket < 0) bucket += ANGLE_BUCKETS;
+
+        BufferedImage[] rotations = sprites.computeIfAbsent(name, k -> new BufferedImage[ANGLE_BUCKETS]);
+        if (rotations[bucket] == null) {
+            rotations[bucket] = render(source, bucket * 360.0 / ANGLE_BUCKETS);
+        }
+        return rotations[bucket];
+    }
+
+    private BufferedImage render(Image source, double angle) {
+        BufferedImage sprite = new BufferedImage(spriteSize, spriteSize, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = sprite.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.translate(spriteSize / 2.0, spriteSize / 2.0);
+            g.rotate(Math.toRadians(angle));
+            g.drawImage(source, -pixelSize / 2, -pixelSize / 2, pixelSize, pixelSize, null);
+        } finally {
+            g.dispose();
+        }
+        return sprite;
+    }
+}
@@ -10,7 +10,14 @@ import java.awt.*;
 public class StatisticsPanel extends JPanel {
 
     private JLabel vehicleCountLabel;
+    private JLabel stepRateLabel;
+    private JLabel breakdownLabel;
+    private JLabel congestionLabel;
     private JTextArea co2HistoryArea;
+    private JPanel header;
+
+    // Older lines are dropped, so the history does not grow with the run length
+    private static final int MAX_HISTORY_LINES = 500;
 
     public StatisticsPanel() {
         setLayout(new BorderLayout());
@@ -24,12 +31,58 @@ public class StatisticsPanel extends JPanel {
         co2HistoryArea.setEditable(false);
         co2HistoryArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
 
+        stepRateLabel = new JLabel("Steps/s: 0.0");
+        breakdownLabel = new JLabel(" ");
+        breakdownLabel.setFont(new Font("Monospaced", Font.PLAIN, 11));
+        congestionLabel = new JLabel("Congested: -");
+
         JScrollPane scrollPane = new JScrollPane(co2HistoryArea);
 
-        add(vehicleCountLabel, BorderLayout.NORTH);
+        header = new JPanel(new GridLayout(4, 1));
+        header.setOpaque(false);
+        header.add(vehicleCountLabel);
+        header.add(stepRateLabel);
+        header.add(breakdownLabel);
+        header.add(congestionLabel);
+
+        add(header, BorderLayout.NORTH);
         add(scrollPane, BorderLayout.CENTER);
     }
 
+    /**
+     * Shows the values of one published simulation step.
+     * Must be called on the Event Dispatch Thread.
+     */
+    public void update(SimulationSnapshot snap) {
+        setVehicleCount(snap.getActiveVehicleCount());
+        addCo2Value(snap.getStep(), snap.getTotalCo2());
+        setBreakdown(snap.getEmissions());
+    }
+
+    /**
+     * Shows the CO2 share of each vehicle type and the edge with the highest emission.
+     */
+    public void setBreakdown(EmissionsAggregator emissions) {
+        StringBuilder text = new StringBuilder();
+        emissions.getByType().forEach((type, value) ->
+                text.append(String.format("%s %.0f  ", type, value)));
+        String[] top = emissions.getTopEdges(1);
+        breakdownLabel.setText(text.length() == 0 ? " " : text.toString().trim());
+        breakdownLabel.setToolTipText(top.length == 0 ? null
+                : String.format("Top edge: %s (%.0f mg/s)", top[0], emissions.getEdgeCo2(top[0])));
+    }
+
+    /**
+     * Removes the rows only a live simulation can fill (step rate, congestion),
+     * e.g. when a recorded trace is replayed.
+     */
+    public void hideLiveRows() {
+        header.remove(stepRateLabel);
+        header.remove(congestionLabel);
+        header.setLayout(new GridLayout(header.getComponentCount(), 1));
+        revalidate();
+    }
+
     /**
      * Updates the vehicle count label.
      */
@@ -37,6 +90,33 @@ public class StatisticsPanel extends JPanel {
         vehicleCountLabel.setText("Vehicles: " + count);
     }
 
+    /**
+     * Updates the measured simulation throughput.
+     */
+    public void setStepRate(double stepsPerSecond) {
+        stepRateLabel.setText(String.format("Steps/s: %.1f", stepsPerSecond));
+    }
+
+    /**
+     * Shows the most congested edge; the full ranking is in the tooltip.
+     */
+    public void setCongestion(EdgeMetricsRepository.Ranking ranking) {
+        if (ranking.size() == 0) {
+            congestionLabel.setText("Congested: -");
+            congestionLabel.setToolTipText(null);
+            return;
+        }
+        congestionLabel.setText(String.format("Congested: %s (%d halting)",
+                ranking.getEdgeId(0), ranking.getHaltingCount(0)));
+
+        StringBuilder tip = new StringBuilder("<html>");
+        for (int i = 0; i < ranking.size(); i++) {
+            tip.append(String.format("%s: %d halting, %d vehicles, %.1f m/s<br>", ranking.getEdgeId(i),
+                    ranking.getHaltingCount(i), ranking.getVehicleCount(i), ranking.getMeanSpeed(i)));
+        }
+        congestionLabel.setToolTipText(tip.append("</html>").toString());
+    }
+
     /**
      * Adds a CO2 value for the current step.
      * Newest step is always inserted at the top.
@@ -50,8 +130,27 @@ public class StatisticsPanel extends JPanel {
 
         // Insert new line at the very top
         co2HistoryArea.insert(line, 0);
+        trimHistory();
 
         // Keep view at the top
         co2HistoryArea.setCaretPosition(0);
     }
+
+    /**
+     * Removes all CO2 history lines (e.g. after jumping to another position of a replay).
+     */
+    public void clearHistory() {
+        co2HistoryArea.setText("");
+    }
+
+    private void trimHistory() {
+        int lines = co2HistoryArea.getLineCount();
+        if (lines <= MAX_HISTORY_LINES + 1) return;
+        try {
+            int cut = co2HistoryArea.getLineStartOffset(MAX_HISTORY_LINES);
+            co2HistoryArea.replaceRange(null, cut, co2HistoryArea.getDocument().getLength());
+        } catch (javax.swing.text.BadLocationException e) {
+            // Only happens if the text changed concurrently, the next update trims again
+        }
+    }
 }
@@ -0,0 +1,171 @@
+package trafficsimulation;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Plays a recorded trace as a stream of snapshots, in place of a live simulation.
+ * Views read getSnapshot() exactly as they read SimulationManager; no SUMO is needed.
+ *
+ * All decoding happens on one "trace-player" thread. Playback follows the recorded
+ * simulation time times the speed factor; if it falls more than one step behind (high
+ * speed, slow machine) it jumps straight to the due step instead of decoding every one.
+ */
+public class TracePlayer implements SnapshotSource {
+
+    private static final Logger logger = LogManager.getLogger(TracePlayer.class);
+
+    // Playback clock resolution
+    private static final long TICK_MILLIS = 10;
+
+    private final TraceReader reader;
+    private final NetworkModel network;
+    private final double stepLength;
+    private final int stepCount;
+    private final ScheduledExecutorService executor;
+    private final List<SimulationListener> listeners = new CopyOnWriteArrayList<>();
+
+    // --- Settings (written by the GUI, read by the player thread) ---
+    private volatile boolean playing = false;
+    private volatile double speed = 1.0;
+
+    // --- Playback State (player thread) ---
+    private volatile SimulationSnapshot snapshot = SimulationSnapshot.EMPTY;
+    private volatile int position = -1;
+    private long lastTickNanos;
+    private double pendingSteps = 0.0; // Fraction of a step accumulated by the clock
+
+    public TracePlayer(TraceReader reader, NetworkModel network) throws IOException {
+        this.reader = reader;
+        this.network = network;
+        this.stepLength = Math.max(1e-3, reader.getStepLength());
+        this.stepCount = reader.getStepCount();
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "trace-player");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        if (stepCount > 0) seek(0);
+    }
+
+    public void addListener(SimulationListener listener) {
+        listeners.add(listener);
+    }
+
+    // --- Controls ---
+
+    public void play() {
+        executor.execute(() -> {
+            if (position >= stepCount - 1) show(0, false); // Restart at the end
+            lastTickNanos = System.nanoTime();
+            pendingSteps = 0.0;
+            playing = true;
+        });
+    }
+
+    public void pause() {
+        playing = false;
+    }
+
+    /**
+     * Playback speed as a multiple of the recorded simulation time (1.0 = as recorded).
+     */
+    public void setSpeed(double speed) {
+        this.speed = Math.max(0.01, speed);
+    }
+
+    /**
+     * Jumps to a trace position (0 .. getStepCount() - 1); decodes at most one block.
+     */
+    public void seek(int target) {
+        executor.execute(() -> {
+            show(Math.max(0, Math.min(stepCount - 1, target)), false);
+            pendingSteps = 0.0;
+        });
+    }
+
+    /**
+     * Jumps to the first step at or after the given simulation time.
+     */
+    public void seekTime(double time) {
+        executor.execute(() -> {
+            try {
+                show(reader.findStep(time), false);
+            } catch (IOException e) {
+                logger.error("Seek to {} s failed", time, e);
+            }
+        });
+    }
+
+    public void close() {
+        executor.shutdownNow();
+        try {
+            reader.close();
+        } catch (IOException e) {
+            logger.error("Error closing trace", e);
+        }
+    }
+
+    // --- Player Thread ---
+
+    private void tick() {
+        if (!playing) return;
+        long now = System.nanoTime();
+        pendingSteps += (now - lastTickNanos) / 1e9 * speed / stepLength;
+        lastTickNanos = now;
+        if (pendingSteps < 1.0) return;
+
+        // 1. Next step, or a jump if more than one step is due
+        int due = (int) pendingSteps;
+        pendingSteps -= due;
+        int target = Math.min(stepCount - 1, position + due);
+        show(target, due == 1);
+
+        // 2. Stop at the end of the trace
+        if (target == stepCount - 1) {
+            playing = false;
+        }
+    }
+
+    private void show(int target, boolean animate) {
+        try {
+            // Interpolate only between consecutive steps, a jump is shown at once
+            SimulationSnapshot previous = animate && target == position + 1 ? snapshot : null;
+            SimulationSnapshot next = reader.readStep(target, previous);
+            snapshot = next;
+            position = target;
+            for (SimulationListener listener : listeners) {
+                listener.onStepCompleted(next);
+            }
+        } catch (IOException | RuntimeException e) {
+            playing = false;
+            logger.error("Reading step {} of the trace failed", target, e);
+        }
+    }
+
+    // --- Getters ---
+
+    @Override
+    public SimulationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public NetworkModel getNetwork() {
+        return network;
+    }
+
+    public boolean isPlaying() { return playing; }
+    public double getSpeed() { return speed; }
+    public int getPosition() { return position; }
+    public int getStepCount() { return stepCount; }
+    public double getStepLength() { return stepLength; }
+}
@@ -0,0 +1,444 @@
+package trafficsimulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Random access to a trace written by TraceWriter.
+ * Opening reads only the header and the block index in the footer, so even multi-gigabyte
+ * traces open instantly. Blocks are memory-mapped one at a time when they are needed;
+ * every block starts with a keyframe, so a seek decodes at most one block.
+ *
+ * Steps are addressed by their position in the trace (0 .. getStepCount() - 1).
+ * Reading forward inside the current block continues from the cursor, which makes
+ * playback cost one step of decoding per step, also when steps are skipped.
+ *
+ * Not thread-safe; use it from one thread (the player thread).
+ */
+public class TraceReader implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(TraceReader.class);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int blockSteps;
+
+    // --- Block Index ---
+    private long[] blockOffset;
+    private double[] blockFirstTime;
+    private int[] blockStart; // Position of the first step of each block in the trace (+1 entry)
+
+    // --- Dictionaries (loaded from the block headers up to loadedBlocks) ---
+    private final List<String> vehicleIds = new ArrayList<>();
+    private final List<String> vehicleTypes = new ArrayList<>();
+    private String[] edgeNames = new String[0];
+    private int edgeCount = 0;
+    private final List<String> lightIds = new ArrayList<>();
+    private int loadedBlocks = 0;
+
+    // --- Cursor (decode state inside the current block) ---
+    private int currentBlock = -1;
+    private ByteBuffer block;
+    private int nextStep = -1; // Trace position of the step the cursor points at
+    private int pass = 0;      // Incremented per opened block; marks the positions decoded in it
+    private int[] lastX = new int[1024];
+    private int[] lastY = new int[1024];
+    private int[] lastPass = new int[1024];
+    private Map<String, String> lightStates = Collections.emptyMap();
+
+    // --- Slots (stable per vehicle between consecutive steps, reused like the state store) ---
+    private int[] slotOfRef = new int[1024];
+    private int[] seenAtStep = new int[1024];
+    private int[] freeSlots = new int[64];
+    private int freeCount = 0;
+    private int slotLimit = 0;
+    private int[] previousRefs = new int[0];
+    private int previousStep = -2;
+    private boolean[] known = new boolean[64];
+
+    public TraceReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, TraceWriter.HEADER_SIZE);
+            if (header.getInt() != TraceWriter.MAGIC) throw new IOException("Not a trace file: " + file);
+            int version = header.getInt();
+            if (version != TraceWriter.VERSION) throw new IOException("Unsupported trace version " + version);
+            this.blockSteps = header.getInt();
+
+            if (!readFooter()) {
+                logger.warn("Trace {} has no index (recording was not closed), scanning blocks", file);
+                scanBlocks();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        Arrays.fill(seenAtStep, -2);
+        logger.info("Opened trace {}: {} steps in {} blocks", file, getStepCount(), blockOffset.length);
+    }
+
+    // --- Index ---
+
+    private boolean readFooter() throws IOException {
+        long size = channel.size();
+        if (size < TraceWriter.HEADER_SIZE + TraceWriter.TRAILER_SIZE) return false;
+        ByteBuffer trailer = read(size - TraceWriter.TRAILER_SIZE, TraceWriter.TRAILER_SIZE);
+        long footerOffset = trailer.getLong();
+        if (trailer.getInt() != TraceWriter.MAGIC || footerOffset < TraceWriter.HEADER_SIZE
+                || footerOffset > size - TraceWriter.TRAILER_SIZE - 8) return false;
+
+        ByteBuffer footer = read(footerOffset, (int) (size - TraceWriter.TRAILER_SIZE - footerOffset));
+        if (footer.getInt() != TraceWriter.FOOTER_MAGIC) return false;
+        int count = footer.getInt();
+        if (footer.remaining() != count * 24) return false;
+
+        allocateIndex(count);
+        for (int b = 0; b < count; b++) {
+            blockOffset[b] = footer.getLong();
+            footer.getInt(); // First step number (positions are used instead)
+            blockStart[b + 1] = blockStart[b] + footer.getInt();
+            blockFirstTime[b] = footer.getDouble();
+        }
+        return true;
+    }
+
+    // Rebuilds the index from the length-prefixed blocks of an unfinished recording
+    private void scanBlocks() throws IOException {
+        List<long[]> found = new ArrayList<>();
+        List<Double> times = new ArrayList<>();
+        long size = channel.size();
+        long offset = TraceWriter.HEADER_SIZE;
+        while (offset + 12 <= size) {
+            ByteBuffer head = read(offset, 12);
+            int length = head.getInt();
+            if (length < 8 || offset + 4 + length > size) break; // Torn last block
+            head.getInt(); // First step number
+            int stepCount = head.getInt();
+            ByteBuffer body = map(offset, 4 + length);
+            body.position(12);
+            skipDictionaries(body);
+            readVarint(body); // Step number of the first step, its time follows
+            times.add(body.getDouble());
+            found.add(new long[] {offset, stepCount});
+            offset += 4 + length;
+        }
+
+        allocateIndex(found.size());
+        for (int b = 0; b < found.size(); b++) {
+            blockOffset[b] = found.get(b)[0];
+            blockStart[b + 1] = blockStart[b] + (int) found.get(b)[1];
+            blockFirstTime[b] = times.get(b);
+        }
+    }
+
+    private void allocateIndex(int count) {
+        blockOffset = new long[count];
+        blockFirstTime = new double[count];
+        blockStart = new int[count + 1];
+    }
+
+    // --- Metadata ---
+
+    public int getStepCount() { return blockStart[blockStart.length - 1]; }
+    public int getBlockSteps() { return blockSteps; }
+    public double getStartTime() { return blockFirstTime.length == 0 ? 0.0 : blockFirstTime[0]; }
+
+    /**
+     * Recorded simulation seconds per step, from the block index (decodes two steps for
+     * single-block traces).
+     */
+    public double getStepLength() throws IOException {
+        if (blockOffset.length >= 2) {
+            return (blockFirstTime[1] - blockFirstTime[0]) / (blockStart[1] - blockStart[0]);
+        }
+        if (getStepCount() < 2) return 1.0;
+        double first = readStep(0, null).getTime();
+        return readStep(1, null).getTime() - first;
+    }
+
+    /**
+     * Position of the first step at or after the given simulation time, using only the index
+     * and at most one decoded block.
+     */
+    public int findStep(double time) throws IOException {
+        if (getStepCount() == 0) return 0;
+        int b = Arrays.binarySearch(blockFirstTime, time);
+        if (b < 0) b = Math.max(0, -b - 2);
+        for (int position = blockStart[b]; position < blockStart[b + 1]; position++) {
+            if (readStep(position, null).getTime() >= time) return position;
+        }
+        return Math.min(blockStart[b + 1], getStepCount() - 1);
+    }
+
+    // --- Reading ---
+
+    /**
+     * Decodes one step into a snapshot.
+     *
+     * @param position trace position, 0 .. getStepCount() - 1
+     * @param previous snapshot shown before (for interpolation), or null
+     */
+    public SimulationSnapshot readStep(int position, SimulationSnapshot previous) throws IOException {
+        if (position < 0 || position >= getStepCount()) {
+            throw new IndexOutOfBoundsException("Step " + position + " of " + getStepCount());
+        }
+
+        // 1. Reads ahead in the current block continue at the cursor (fast playback skips
+        //    steps); anything else starts at the keyframe of the target block
+        boolean ahead = currentBlock >= 0 && position >= nextStep && position < blockStart[currentBlock + 1];
+        if (!ahead) {
+            int b = Arrays.binarySearch(blockStart, 0, blockOffset.length, position);
+            if (b < 0) b = -b - 2;
+            openBlock(b);
+        }
+        while (nextStep < position) decodeStep(null, false);
+        SimulationSnapshot snap = decodeStep(previous, true);
+        if (nextStep == blockStart[currentBlock + 1] && currentBlock + 1 < blockOffset.length) {
+            openBlock(currentBlock + 1);
+        }
+        return snap;
+    }
+
+    private void openBlock(int b) throws IOException {
+        loadDictionaries(b);
+        long offset = blockOffset[b];
+        int length = read(offset, 4).getInt();
+        block = map(offset + 4, length);
+        block.position(8); // firstStep, stepCount
+        skipDictionaries(block);
+        currentBlock = b;
+        nextStep = blockStart[b];
+        pass++;
+        lightStates = Collections.emptyMap();
+    }
+
+    // Reads the dictionary entries of all blocks up to and including b
+    private void loadDictionaries(int b) throws IOException {
+        while (loadedBlocks <= b) {
+            long offset = blockOffset[loadedBlocks];
+            int length = read(offset, 4).getInt();
+            ByteBuffer body = map(offset + 4, length);
+            body.position(8);
+            int vehicles = readVarint(body);
+            for (int i = 0; i < vehicles; i++) {
+                vehicleIds.add(readString(body));
+                String type = readString(body);
+                vehicleTypes.add(type.isEmpty() ? null : type);
+            }
+            int edges = readVarint(body);
+            if (edgeCount + edges > edgeNames.length) {
+                edgeNames = Arrays.copyOf(edgeNames, Math.max(edgeCount + edges, edgeNames.length * 2));
+            }
+            for (int i = 0; i < edges; i++) edgeNames[edgeCount++] = readString(body);
+            int lights = readVarint(body);
+            for (int i = 0; i < lights; i++) lightIds.add(readString(body));
+            loadedBlocks++;
+        }
+    }
+
+    private static void skipDictionaries(ByteBuffer body) {
+        int vehicles = readVarint(body);
+        for (int i = 0; i < 2 * vehicles; i++) skipString(body);
+        int edges = readVarint(body);
+        for (int i = 0; i < edges; i++) skipString(body);
+        int lights = readVarint(body);
+        for (int i = 0; i < lights; i++) skipString(body);
+    }
+
+    /**
+     * Decodes the step at the cursor; only builds a snapshot if requested (seeking skips).
+     */
+    private SimulationSnapshot decodeStep(SimulationSnapshot previous, boolean build) {
+        ByteBuffer in = block;
+
+        int step = readVarint(in);
+        double time = in.getDouble();
+        int active = readVarint(in);
+        int n = readVarint(in);
+
+        int[] refs = new int[n];
+        for (int i = 0; i < n; i++) {
+            refs[i] = readVarint(in);
+            ensureRefCapacity(refs[i]);
+        }
+
+        double[] x = build ? new double[n] : null;
+        double[] y = build ? new double[n] : null;
+        for (int i = 0; i < n; i++) {
+            int ref = refs[i];
+            int delta = readZigZag(in);
+            // Delta only if the writer saw the vehicle earlier in this block (absolute otherwise)
+            lastX[ref] = lastPass[ref] == pass ? lastX[ref] + delta : delta;
+            if (build) x[i] = lastX[ref] / TraceWriter.POSITION_SCALE;
+        }
+        for (int i = 0; i < n; i++) {
+            int ref = refs[i];
+            int delta = readZigZag(in);
+            lastY[ref] = lastPass[ref] == pass ? lastY[ref] + delta : delta;
+            lastPass[ref] = pass;
+            if (build) y[i] = lastY[ref] / TraceWriter.POSITION_SCALE;
+        }
+
+        double[] speed = build ? new double[n] : null;
+        double[] angle = build ? new double[n] : null;
+        int[] edgeIndex = build ? new int[n] : null;
+        double[] co2 = build ? new double[n] : null;
+        for (int i = 0; i < n; i++) {
+            int v = readVarint(in);
+            if (build) speed[i] = v / TraceWriter.SPEED_SCALE;
+        }
+        for (int i = 0; i < n; i++) {
+            int v = readVarint(in);
+            if (build) angle[i] = v / TraceWriter.ANGLE_SCALE;
+        }
+        for (int i = 0; i < n; i++) {
+            int v = readVarint(in);
+            if (build) edgeIndex[i] = v - 1;
+        }
+        for (int i = 0; i < n; i++) {
+            int v = readVarint(in);
+            if (build) co2[i] = v;
+        }
+
+        // Light changes (a full set at the keyframe)
+        int changed = readVarint(in);
+        if (changed > 0) {
+            Map<String, String> states = new HashMap<>(lightStates);
+            for (int k = 0; k < changed; k++) {
+                String id = lightIds.get(readVarint(in));
+                states.put(id, readString(in));
+            }
+            lightStates = Collections.unmodifiableMap(states);
+        }
+        nextStep++;
+
+        if (!build) return null;
+        String[] ids = new String[n];
+        String[] types = new String[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = vehicleIds.get(refs[i]);
+            types[i] = vehicleTypes.get(refs[i]);
+        }
+        int[] slots = assignSlots(refs, nextStep - 1);
+        return new SimulationSnapshot(step, time, active, ids, types, edgeIndex, edgeNames,
+                slots, x, y, angle, speed, co2, lightStates, previous);
+    }
+
+    /**
+     * Gives every vehicle a small slot that stays the same while it is present in consecutive
+     * steps; slots of vehicles that left are reused (keeps the snapshot lookups compact).
+     */
+    private int[] assignSlots(int[] refs, int position) {
+        boolean consecutive = position == previousStep + 1;
+        if (!consecutive) {
+            freeCount = 0;
+            slotLimit = 0;
+        }
+
+        // 1. Vehicles that were present in the previous step keep their slot
+        if (known.length < refs.length) known = new boolean[Math.max(refs.length, known.length * 2)];
+        for (int i = 0; i < refs.length; i++) {
+            known[i] = consecutive && seenAtStep[refs[i]] == position - 1;
+            seenAtStep[refs[i]] = position;
+        }
+
+        // 2. Release the slots of vehicles that are gone
+        if (consecutive) {
+            for (int ref : previousRefs) {
+                if (seenAtStep[ref] == position) continue;
+                if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+                freeSlots[freeCount++] = slotOfRef[ref];
+            }
+        }
+
+        // 3. New vehicles get a free slot
+        int[] slots = new int[refs.length];
+        for (int i = 0; i < refs.length; i++) {
+            int ref = refs[i];
+            if (!known[i]) slotOfRef[ref] = freeCount > 0 ? freeSlots[--freeCount] : slotLimit++;
+            slots[i] = slotOfRef[ref];
+        }
+        previousRefs = refs;
+        previousStep = position;
+        return slots;
+    }
+
+    private void ensureRefCapacity(int ref) {
+        if (ref < lastX.length) return;
+        int capacity = Math.max(ref + 1, lastX.length * 2);
+        lastX = Arrays.copyOf(lastX, capacity);
+        lastY = Arrays.copyOf(lastY, capacity);
+        lastPass = Arrays.copyOf(lastPass, capacity);
+        slotOfRef = Arrays.copyOf(slotOfRef, capacity);
+        int old = seenAtStep.length;
+        seenAtStep = Arrays.copyOf(seenAtStep, capacity);
+        Arrays.fill(seenAtStep, old, capacity, -2);
+    }
+
+    // --- Low Level ---
+
+    private MappedByteBuffer map(long offset, int length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Truncated trace " + file);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int readZigZag(ByteBuffer in) {
+        int v = readVarint(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarint(in);
+        byte[] utf8 = new byte[length];
+        in.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer in) {
+        int length = readVarint(in);
+        in.position(in.position() + length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
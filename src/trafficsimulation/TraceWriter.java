@@ -0,0 +1,469 @@
+package trafficsimulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Records the full vehicle state of every step (position, speed, angle, edge, CO2) into a
+ * compact binary trace for offline analysis and replay.
+ * record() only queues the immutable snapshot; a background thread encodes it and writes
+ * through a FileChannel, so the simulation thread never waits for encoding or the disk.
+ *
+ * Layout (little endian):
+ *   header:  magic, version, blockSteps
+ *   blocks:  length, firstStep, stepCount,
+ *            new vehicle IDs (id + type), new edge IDs, new light IDs (dictionary entries
+ *            first used in this block; the dictionaries only grow),
+ *            then per step: step, time, active, n, and the columns
+ *              vehicle ref[n], x[n], y[n], speed[n], angle[n], edge[n], co2[n],
+ *              changed lights (count, then light ref + state)
+ *   footer:  footer magic, blockCount, per block (offset, firstStep, stepCount, firstTime)
+ *   trailer: footer offset (long), magic
+ *
+ * Column values are varints. Positions are in centimeters and delta encoded against the
+ * same vehicle's previous position inside the block; the first step of every block is
+ * written absolute (a keyframe, as are all light states), so any block decodes on its own.
+ * Speed is in cm/s, angle in 1/100 degree, CO2 in mg/s, edge as dictionary ref + 1 (0 = none).
+ */
+public class TraceWriter {
+
+    private static final Logger logger = LogManager.getLogger(TraceWriter.class);
+
+    // --- Format ---
+    static final int MAGIC = 0x54524345;        // "TRCE"
+    static final int FOOTER_MAGIC = 0x54524346; // "TRCF"
+    static final int VERSION = 1;
+    static final double POSITION_SCALE = 100.0; // cm
+    static final double SPEED_SCALE = 100.0;    // cm/s
+    static final double ANGLE_SCALE = 100.0;    // 1/100 degree
+    static final int HEADER_SIZE = 12;
+    static final int TRAILER_SIZE = 12;
+
+    public static final int DEFAULT_BLOCK_STEPS = 100;
+
+    // Snapshots waiting for the writer; small, because each one holds a full step
+    private static final int QUEUE_CAPACITY = 64;
+
+    // Queued after the last snapshot to end the writer thread
+    private static final SimulationSnapshot END = SimulationSnapshot.EMPTY;
+
+    private final Path file;
+    private final int blockSteps;
+    private final BlockingQueue<SimulationSnapshot> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+
+    // --- Writer State (writer thread only) ---
+    private FileChannel channel;
+    private boolean failed = false;
+    private final ByteSink payload = new ByteSink(1 << 16);
+    private final ByteSink header = new ByteSink(1 << 12);
+    private int blockFirstStep;
+    private int blockStepCount = 0;
+    private double blockFirstTime;
+
+    // Dictionaries (ref = insertion order) and their entries not yet written
+    private final Map<String, Integer> vehicleRefs = new HashMap<>();
+    private final Map<String, Integer> edgeRefs = new HashMap<>();
+    private final Map<String, Integer> lightRefs = new HashMap<>();
+    private final List<String> newVehicles = new ArrayList<>(); // id, type pairs
+    private final List<String> newEdges = new ArrayList<>();
+    private final List<String> newLights = new ArrayList<>();
+
+    // Ref caches by store slot and by snapshot edge index; the String identity check
+    // replaces a hash lookup per vehicle as long as the slot/index holds the same entry
+    private String[] idBySlot = new String[1024];
+    private int[] refBySlot = new int[1024];
+    private String[] edgeByIndex = new String[256];
+    private int[] edgeRefByIndex = new int[256];
+
+    // Last position per vehicle ref inside the current block (valid if stamp == block number)
+    private int[] lastX = new int[1024];
+    private int[] lastY = new int[1024];
+    private int[] lastBlock = new int[1024];
+    private int blockNumber = 1;
+    private Map<String, String> lastLightStates;
+
+    // Block index for the footer
+    private final ByteSink index = new ByteSink(1 << 12);
+    private int blockCount = 0;
+    private long stepsWritten = 0;
+
+    public TraceWriter(String filePath) throws IOException {
+        this(filePath, DEFAULT_BLOCK_STEPS);
+    }
+
+    /**
+     * Creates the trace file and starts the writer thread.
+     *
+     * @param blockSteps steps per block (the seek granularity of a reader)
+     */
+    public TraceWriter(String filePath, int blockSteps) throws IOException {
+        this.file = Paths.get(filePath);
+        this.blockSteps = Math.max(1, blockSteps);
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteSink start = new ByteSink(HEADER_SIZE);
+        start.putInt(MAGIC);
+        start.putInt(VERSION);
+        start.putInt(this.blockSteps);
+        writeFully(start);
+
+        this.writerThread = new Thread(this::writeLoop, "trace-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues one step. Blocks only if the writer is QUEUE_CAPACITY steps behind.
+     */
+    public void record(SimulationSnapshot snap) {
+        if (closed || snap == END) return;
+        try {
+            queue.put(snap);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the last block and the footer and closes the file. Waits for the writer thread.
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            queue.put(END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Trace {} finished: {} steps in {} blocks, {} vehicles, {} edges",
+                file, stepsWritten, blockCount, vehicleRefs.size(), edgeRefs.size());
+    }
+
+    // --- Writer Thread ---
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                SimulationSnapshot snap = queue.take();
+                if (snap == END) break;
+                if (failed) continue; // Keep draining so producers never block on a broken disk
+                try {
+                    encodeStep(snap);
+                    if (blockStepCount == blockSteps) writeBlock();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            if (!failed) {
+                writeBlock();
+                writeFooter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail(e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Error closing trace {}", file, e);
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        failed = true;
+        logger.error("Writing trace {} failed, recording stopped", file, e);
+    }
+
+    private void encodeStep(SimulationSnapshot snap) {
+        if (blockStepCount == 0) {
+            blockFirstStep = snap.getStep();
+            blockFirstTime = snap.getTime();
+        }
+        int n = snap.getVehicleCount();
+
+        // 1. Step header
+        payload.putVarint(snap.getStep());
+        payload.putDouble(snap.getTime());
+        payload.putVarint(snap.getActiveVehicleCount());
+        payload.putVarint(n);
+
+        // 2. Vehicle refs (interning new IDs); remember each previous position for the deltas
+        int[] refs = new int[n];
+        for (int i = 0; i < n; i++) {
+            refs[i] = cachedVehicleRef(snap, i);
+            payload.putVarint(refs[i]);
+        }
+
+        // 3. Positions, delta against the previous step of the same block (absolute on first sight)
+        for (int i = 0; i < n; i++) {
+            int ref = refs[i];
+            int qx = (int) Math.round(snap.getX(i) * POSITION_SCALE);
+            payload.putZigZag(lastBlock[ref] == blockNumber ? qx - lastX[ref] : qx);
+            lastX[ref] = qx;
+        }
+        for (int i = 0; i < n; i++) {
+            int ref = refs[i];
+            int qy = (int) Math.round(snap.getY(i) * POSITION_SCALE);
+            payload.putZigZag(lastBlock[ref] == blockNumber ? qy - lastY[ref] : qy);
+            lastY[ref] = qy;
+            lastBlock[ref] = blockNumber;
+        }
+
+        // 4. Remaining columns
+        for (int i = 0; i < n; i++) {
+            payload.putVarint((int) Math.round(Math.max(0.0, snap.getSpeed(i)) * SPEED_SCALE));
+        }
+        for (int i = 0; i < n; i++) {
+            double angle = ((snap.getAngle(i) % 360) + 360) % 360;
+            payload.putVarint((int) Math.round(angle * ANGLE_SCALE));
+        }
+        String[] edgeNames = snap.getEdgeNames();
+        for (int i = 0; i < n; i++) {
+            int edge = snap.getEdgeIndex(i);
+            payload.putVarint(edge < 0 ? 0 : cachedEdgeRef(edgeNames, edge) + 1);
+        }
+        for (int i = 0; i < n; i++) {
+            payload.putVarint((int) Math.min(Integer.MAX_VALUE, Math.round(snap.getCo2(i))));
+        }
+
+        // 5. Light states: all at the start of a block, afterwards only when the map was replaced
+        Map<String, String> lights = snap.getLightStates();
+        if (blockStepCount == 0 || lights != lastLightStates) {
+            Map<String, String> previous = blockStepCount == 0 ? null : lastLightStates;
+            int changed = 0;
+            for (Map.Entry<String, String> e : lights.entrySet()) {
+                if (previous == null || !e.getValue().equals(previous.get(e.getKey()))) changed++;
+            }
+            payload.putVarint(changed);
+            for (Map.Entry<String, String> e : lights.entrySet()) {
+                if (previous != null && e.getValue().equals(previous.get(e.getKey()))) continue;
+                payload.putVarint(lightRef(e.getKey()));
+                payload.putString(e.getValue());
+            }
+            lastLightStates = lights;
+        } else {
+            payload.putVarint(0);
+        }
+
+        blockStepCount++;
+        stepsWritten++;
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockStepCount == 0) return;
+        long offset = channel.position();
+
+        // Header with the dictionary entries first used in this block
+        header.clear();
+        header.putInt(0); // Length, patched below
+        header.putInt(blockFirstStep);
+        header.putInt(blockStepCount);
+        header.putVarint(newVehicles.size() / 2);
+        for (String s : newVehicles) header.putString(s);
+        header.putVarint(newEdges.size());
+        for (String s : newEdges) header.putString(s);
+        header.putVarint(newLights.size());
+        for (String s : newLights) header.putString(s);
+        header.patchInt(0, header.size() - 4 + payload.size());
+
+        writeFully(header);
+        writeFully(payload);
+
+        index.putLong(offset);
+        index.putInt(blockFirstStep);
+        index.putInt(blockStepCount);
+        index.putDouble(blockFirstTime);
+        blockCount++;
+
+        newVehicles.clear();
+        newEdges.clear();
+        newLights.clear();
+        payload.clear();
+        blockStepCount = 0;
+        blockNumber++;
+    }
+
+    private void writeFooter() throws IOException {
+        long footerOffset = channel.position();
+        ByteSink footer = new ByteSink(8 + index.size() + TRAILER_SIZE);
+        footer.putInt(FOOTER_MAGIC);
+        footer.putInt(blockCount);
+        footer.putBytes(index);
+        footer.putLong(footerOffset);
+        footer.putInt(MAGIC);
+        writeFully(footer);
+    }
+
+    private void writeFully(ByteSink sink) throws IOException {
+        ByteBuffer buffer = sink.asBuffer();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // --- Dictionaries ---
+
+    private int cachedVehicleRef(SimulationSnapshot snap, int i) {
+        int slot = snap.getSlot(i);
+        String id = snap.getId(i);
+        if (slot >= idBySlot.length) {
+            int capacity = Math.max(slot + 1, idBySlot.length * 2);
+            idBySlot = Arrays.copyOf(idBySlot, capacity);
+            refBySlot = Arrays.copyOf(refBySlot, capacity);
+        }
+        if (idBySlot[slot] != id) {
+            idBySlot[slot] = id;
+            refBySlot[slot] = vehicleRef(id, snap.getImageName(i));
+        }
+        return refBySlot[slot];
+    }
+
+    private int cachedEdgeRef(String[] edgeNames, int edge) {
+        if (edge >= edgeByIndex.length) {
+            int capacity = Math.max(edge + 1, edgeByIndex.length * 2);
+            edgeByIndex = Arrays.copyOf(edgeByIndex, capacity);
+            edgeRefByIndex = Arrays.copyOf(edgeRefByIndex, capacity);
+        }
+        String name = edgeNames[edge];
+        if (edgeByIndex[edge] != name) {
+            edgeByIndex[edge] = name;
+            edgeRefByIndex[edge] = edgeRef(name);
+        }
+        return edgeRefByIndex[edge];
+    }
+
+    private int vehicleRef(String id, String type) {
+        Integer ref = vehicleRefs.get(id);
+        if (ref != null) return ref;
+        int newRef = vehicleRefs.size();
+        vehicleRefs.put(id, newRef);
+        newVehicles.add(id);
+        newVehicles.add(type == null ? "" : type);
+        if (newRef == lastX.length) {
+            int capacity = newRef * 2;
+            lastX = Arrays.copyOf(lastX, capacity);
+            lastY = Arrays.copyOf(lastY, capacity);
+            lastBlock = Arrays.copyOf(lastBlock, capacity);
+        }
+        return newRef;
+    }
+
+    private int edgeRef(String edge) {
+        return intern(edgeRefs, newEdges, edge);
+    }
+
+    private int lightRef(String light) {
+        return intern(lightRefs, newLights, light);
+    }
+
+    private static int intern(Map<String, Integer> refs, List<String> added, String key) {
+        Integer ref = refs.get(key);
+        if (ref != null) return ref;
+        refs.put(key, refs.size());
+        added.add(key);
+        return refs.size() - 1;
+    }
+
+    /**
+     * Growable little endian byte buffer with varint support.
+     */
+    private static final class ByteSink {
+        private byte[] bytes;
+        private int size = 0;
+
+        ByteSink(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        int size() { return size; }
+        void clear() { size = 0; }
+
+        ByteBuffer asBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            bytes[size++] = (byte) v;
+            bytes[size++] = (byte) (v >>> 8);
+            bytes[size++] = (byte) (v >>> 16);
+            bytes[size++] = (byte) (v >>> 24);
+        }
+
+        void patchInt(int position, int v) {
+            bytes[position] = (byte) v;
+            bytes[position + 1] = (byte) (v >>> 8);
+            bytes[position + 2] = (byte) (v >>> 16);
+            bytes[position + 3] = (byte) (v >>> 24);
+        }
+
+        void putLong(long v) {
+            putInt((int) v);
+            putInt((int) (v >>> 32));
+        }
+
+        void putDouble(double v) {
+            putLong(Double.doubleToRawLongBits(v));
+        }
+
+        // Unsigned LEB128: 7 bits per byte, high bit = more bytes follow
+        void putVarint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[size++] = (byte) v;
+        }
+
+        // Small negative deltas stay small: 0, -1, 1, -2, ... -> 0, 1, 2, 3, ...
+        void putZigZag(int v) {
+            putVarint((v << 1) ^ (v >> 31));
+        }
+
+        void putString(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            putVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void putBytes(ByteSink other) {
+            ensure(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+    }
+}
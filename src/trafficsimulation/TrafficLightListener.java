@@ -0,0 +1,8 @@
+package trafficsimulation;
+
+/**
+ * Notified by TrafficLightRepository when a light reports a new state.
+ */
+interface TrafficLightListener {
+    void onLightChanged(TrafficLightWrap light);
+}
@@ -1,10 +1,20 @@
 package trafficsimulation;
 
 import de.tudresden.sumo.cmd.Trafficlight;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoPrimitive;
 import de.tudresden.sumo.objects.SumoStringList;
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import de.tudresden.sumo.subscription.VariableSubscription;
+import de.tudresden.sumo.util.Observable;
+import de.tudresden.sumo.util.Observer;
 import it.polito.appeal.traci.SumoTraciConnection;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -12,35 +22,59 @@ import org.apache.logging.log4j.Logger;
 /**
  * Manages the collection of all Traffic Lights in the simulation.
  * Acts as a central "Database" to store and update light states.
+ * States are pushed by SUMO through one subscription per light.
  */
-public class TrafficLightRepository {
+public class TrafficLightRepository implements Observer {
 
     private static final Logger logger = LogManager.getLogger(TrafficLightRepository.class);
 
+    // Subscriptions stay active for the whole run
+    private static final double SUBSCRIPTION_END = Double.MAX_VALUE;
+
     // --- Fields ---
     private List<TrafficLightWrap> lights;
     private SumoTraciConnection conn;
+    private NetworkModel network; // Source of the signal positions (may be null)
+
+    // ID index over 'lights' (lookups and subscription routing)
+    private Map<String, TrafficLightWrap> lightsById = new HashMap<>();
+
+    // Lights whose state string changed during the current step
+    private List<TrafficLightWrap> changed = new ArrayList<>();
+
+    private List<TrafficLightListener> listeners = new ArrayList<>();
 
     // --- Constructor ---
-    public TrafficLightRepository(SumoTraciConnection conn) {
+    public TrafficLightRepository(SumoTraciConnection conn, NetworkModel network) {
         this.conn = conn;
+        this.network = network;
         this.lights = new ArrayList<>();
         loadLights(); // Load lights immediately upon initialization
     }
 
+    public void addListener(TrafficLightListener listener) {
+        listeners.add(listener);
+    }
+
     // --- Core Logic Methods ---
 
     /**
-     * Fetches all Traffic Light IDs from SUMO and creates wrapper objects.
+     * Fetches all Traffic Light IDs from SUMO, creates wrapper objects
+     * and subscribes to their state and phase.
      */
     public void loadLights() {
         try {
             // Fetch ID list from SUMO API
             SumoStringList ids = (SumoStringList) conn.do_job_get(Trafficlight.getIDList());
             
+            conn.addObserver(this);
+
             // Create wrappers for each light
             for (String id : ids) {
-                lights.add(new TrafficLightWrap(id, conn));
+                TrafficLightWrap tl = new TrafficLightWrap(id, conn, network);
+                lights.add(tl);
+                lightsById.put(id, tl);
+                subscribeLight(tl);
             }
             //System.out.println("Loaded " + lights.size() + " Traffic Lights.");
             logger.info("🚦 Loaded {} Traffic Lights from the map.", lights.size());
@@ -52,14 +86,51 @@ public class TrafficLightRepository {
         }
     }
 
+    private void subscribeLight(TrafficLightWrap tl) {
+        try {
+            VariableSubscription vs = new VariableSubscription(
+                    SubscribtionVariable.trafficlight, 0, SUBSCRIPTION_END, tl.getID());
+            vs.addCommand(Constants.TL_RED_YELLOW_GREEN_STATE);
+            vs.addCommand(Constants.TL_CURRENT_PHASE);
+            conn.do_subscription(vs);
+        } catch (Exception e) {
+            logger.error("Failed to subscribe to traffic light {}", tl.getID(), e);
+        }
+    }
+
     /**
-     * Updates the state (Red/Green) of every traffic light in the list.
-     * Should be called at every simulation step.
+     * Receives the subscribed light variables while SUMO processes a time step.
+     */
+    @Override
+    public void update(Observable observable, SubscriptionObject so) {
+        if (so.response != ResponseType.TL_VARIABLE || so.object == null) return;
+
+        TrafficLightWrap tl = lightsById.get(so.id);
+        if (tl == null) return;
+
+        Object value = ((SumoPrimitive) so.object).val;
+        if (so.variable == Constants.TL_RED_YELLOW_GREEN_STATE) {
+            if (tl.applyState((String) value)) {
+                changed.add(tl);
+            }
+        } else if (so.variable == Constants.TL_CURRENT_PHASE) {
+            tl.setPhase((Integer) value);
+        }
+    }
+
+    /**
+     * Notifies listeners about the lights whose state string changed in this step.
+     * Should be called at every simulation step (after do_timestep).
      */
     public void updateLights() {
-        for (TrafficLightWrap tl : lights) {
-            tl.updateState();
+        if (changed.isEmpty()) return;
+
+        for (TrafficLightWrap tl : changed) {
+            for (TrafficLightListener listener : listeners) {
+                listener.onLightChanged(tl);
+            }
         }
+        changed.clear();
     }
 
     // --- Getters ---
@@ -70,11 +141,6 @@ public class TrafficLightRepository {
 //Finds a specific traffic light by  id, and return null if not found
     
     public TrafficLightWrap findlight(String id ) { 
-    	for (TrafficLightWrap t1 : lights) {
-    		if (t1.getID().equals(id)) {
-    return t1;
-    }
-    		} 
-    	return null;
+    	return lightsById.get(id);
     	}
     }
@@ -27,6 +27,7 @@ public class TrafficLightWrap {
     private String id;
     private SumoTraciConnection conn;
     private String currentState = ""; 
+    private int currentPhase = -1;
 
     private static final Logger logger = LogManager.getLogger(TrafficLightWrap.class);
     
@@ -34,18 +35,36 @@ public class TrafficLightWrap {
     private List<SignalPoint> signalPoints = new ArrayList<>();
 
     // --- Constructor ---
-    public TrafficLightWrap(String id, SumoTraciConnection conn) {
+    public TrafficLightWrap(String id, SumoTraciConnection conn, NetworkModel network) {
         this.id = id;
         this.conn = conn;
-        calculateSignalPositions(); // Calculate positions on initialization
+        // Calculate positions on initialization (from the parsed net file if possible)
+        if (network == null || !loadSignalPositions(network)) {
+            calculateSignalPositions();
+        }
         updateState();              // Get initial state
     }
 
     // --- Core Logic ---
 
+    /**
+     * Takes the signal heads precomputed by the NetworkLoader (no TraCI calls).
+     * Returns false if the network does not contain this light.
+     */
+    private boolean loadSignalPositions(NetworkModel network) {
+        int t = network.findTrafficLight(id);
+        if (t < 0) return false;
+
+        for (int s = network.getSignalStart(t); s < network.getSignalEnd(t); s++) {
+            signalPoints.add(new SignalPoint(network.getSignalX(s), network.getSignalY(s), network.getSignalLinkIndex(s)));
+        }
+        return true;
+    }
+
     /**
      * Determines the physical position (x, y) for each signal head
      * by finding the end-point of every lane controlled by this light.
+     * Fallback via TraCI if the light is missing in the parsed network.
      */
     private void calculateSignalPositions() {
         try {
@@ -73,8 +92,24 @@ public class TrafficLightWrap {
         }
     }
 
+    /**
+     * Stores a state string delivered by the light's subscription.
+     * Returns true if it differs from the previous state.
+     */
+    boolean applyState(String state) {
+        if (state == null || state.equals(currentState)) return false;
+        this.currentState = state;
+        return true;
+    }
+
+    void setPhase(int phase) {
+        this.currentPhase = phase;
+    }
+
     /**
      * Updates the current Red/Yellow/Green state string from SUMO.
+     * Only needed outside of regular steps (initial load, manual switch);
+     * during stepping the subscription delivers the state.
      */
     public void updateState() {
         try {
@@ -91,14 +126,17 @@ public class TrafficLightWrap {
      */
     public void switchToNextPhase() {
         try {
-            // 1) read current phase index (0,1,2,...)
-            int currentPhase = (Integer) conn.do_job_get(Trafficlight.getPhase(id));
+            // 1) read current phase index (0,1,2,...), cached from the subscription
+            if (currentPhase < 0) {
+                currentPhase = (Integer) conn.do_job_get(Trafficlight.getPhase(id));
+            }
 
             // 2) next phase (simple increment)
             int nextPhase = (currentPhase + 1) % 4;
 
             // 3) apply next phase
             conn.do_job_set(Trafficlight.setPhase(id, nextPhase));
+            currentPhase = nextPhase;
 
             // 4) refresh cached state so GUI can display the new colors
             updateState();
@@ -116,6 +154,7 @@ public class TrafficLightWrap {
 
     public List<SignalPoint> getSignalPoints() { return signalPoints; }
     public String getCurrentState() { return currentState; }
+    public int getCurrentPhase() { return currentPhase; }
     public String getID() { return id; }
 
     // --- Inner Class ---
@@ -1,24 +1,51 @@
 package trafficsimulation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
- * Simple filter for vehicles by type and street
+ * Simple filter for vehicles by type and street.
+ *
+ * Keeps inverted indexes (type -> vehicles, edge -> vehicles) that are updated
+ * incrementally from the repository's depart/arrive/edge-change events instead of
+ * scanning all vehicles. A filter query walks only the vehicles of the selected keys,
+ * and the distinct types/edges are simply the index keys.
+ *
+ * Events arrive on the simulation thread and are queued; they are applied on the
+ * Event Dispatch Thread, which is the only thread that reads or changes the indexes.
  */
-public class VehicleFilter {
+public class VehicleFilter implements VehicleIndexListener {
 
-    private VehicleRepository repo;
-    private List<String> types = new ArrayList<>();
-    private List<String> edges = new ArrayList<>();
+    private Set<String> types = new HashSet<>();
+    private Set<String> edges = new HashSet<>();
+    private VehicleQuery query; // Optional compiled condition, null = none
 
-    public VehicleFilter(VehicleRepository repo) {
-        this.repo = repo;
-    }
+    // --- Indexes (EDT only) ---
+    private final Map<String, SlotSet> typeIndex = new LinkedHashMap<>();
+    private final Map<String, SlotSet> edgeIndex = new LinkedHashMap<>();
+    private String[] slotId = new String[64];
+    private String[] slotType = new String[64];
+    private String[] slotEdge = new String[64];
+    private int[] typePos = new int[64]; // Position of the slot inside its type set
+    private int[] edgePos = new int[64]; // Position of the slot inside its edge set
+
+    // Keys that appeared or disappeared since the last drain (for incremental list updates)
+    private final Set<String> changedTypes = new LinkedHashSet<>();
+    private final Set<String> changedEdges = new LinkedHashSet<>();
+
+    // Changes from the simulation thread, not yet applied
+    private final ConcurrentLinkedQueue<Runnable> pendingEvents = new ConcurrentLinkedQueue<>();
 
     // Add/Remove filters
     public void addType(String type) {
-        if (!types.contains(type)) types.add(type);
+        types.add(type);
     }
 
     public void removeType(String type) {
@@ -26,7 +53,7 @@ public class VehicleFilter {
     }
 
     public void addEdge(String edge) {
-        if (!edges.contains(edge)) edges.add(edge);
+        edges.add(edge);
     }
 
     public void removeEdge(String edge) {
@@ -36,61 +63,207 @@ public class VehicleFilter {
     public void clear() {
         types.clear();
         edges.clear();
+        query = null;
     }
 
-    // Get filtered vehicles
-    public List<VehicleWrap> getFiltered() {
-        List<VehicleWrap> all = repo.getAllVehicles();
+    /**
+     * Sets the compiled query combined (AND) with the type/street selection; null removes it.
+     */
+    public void setQuery(VehicleQuery query) {
+        this.query = query;
+    }
 
-        // No filters = return all
-        if (types.isEmpty() && edges.isEmpty()) return all;
+    public VehicleQuery getQuery() { return query; }
 
-        List<VehicleWrap> result = new ArrayList<>();
-        for (VehicleWrap v : all) {
-            if (matches(v)) result.add(v);
-        }
-        return result;
+    public boolean isActive() {
+        return !types.isEmpty() || !edges.isEmpty() || query != null;
     }
 
-    // Check if vehicle matches filters
-    private boolean matches(VehicleWrap v) {
-        // Check type filter
-        if (!types.isEmpty()) {
-            String vType = v.getImageName();
-            if (vType == null || !types.contains(vType)) return false;
+    public boolean isTypeSelected(String type) { return types.contains(type); }
+    public boolean isEdgeSelected(String edge) { return edges.contains(edge); }
+
+    /**
+     * Returns the indices (into the snapshot) of all vehicles matching the filters.
+     * Only the vehicles of the selected keys are visited; a query on its own scans the snapshot columns.
+     */
+    public int[] getFiltered(SimulationSnapshot snap) {
+        applyPendingEvents();
+        if (types.isEmpty() && edges.isEmpty()) {
+            return query == null ? new int[0] : query.evaluate(snap);
         }
 
-        // Check edge filter
-        if (!edges.isEmpty()) {
-            String vEdge = v.getEdge();
-            if (vEdge == null || !edges.contains(vEdge)) return false;
+        // 1. Walk the smaller side, check the other side per vehicle
+        boolean byType = !types.isEmpty() && (edges.isEmpty() || selectedSize(typeIndex, types) <= selectedSize(edgeIndex, edges));
+        Set<String> keys = byType ? types : edges;
+        Map<String, SlotSet> index = byType ? typeIndex : edgeIndex;
+
+        int[] result = new int[16];
+        int n = 0;
+        for (String key : keys) {
+            SlotSet set = index.get(key);
+            if (set == null) continue;
+            for (int k = 0; k < set.size; k++) {
+                int slot = set.members[k];
+                if (byType && !edges.isEmpty() && !edges.contains(slotEdge[slot])) continue;
+                if (!byType && !types.isEmpty() && !types.contains(slotType[slot])) continue;
+
+                // 2. Map to the snapshot (the index may be a step ahead of it)
+                int i = snap.indexOfSlot(slot);
+                if (i < 0 || !snap.getId(i).equals(slotId[slot])) continue;
+                if (query != null && !query.matches(snap, i)) continue;
+                if (n == result.length) result = Arrays.copyOf(result, n * 2);
+                result[n++] = i;
+            }
         }
+        return Arrays.copyOf(result, n);
+    }
 
-        return true;
+    private static int selectedSize(Map<String, SlotSet> index, Set<String> keys) {
+        int size = 0;
+        for (String key : keys) {
+            SlotSet set = index.get(key);
+            if (set != null) size += set.size;
+        }
+        return size;
     }
 
     // Get all available types
     public List<String> getAllTypes() {
-        return getUniqueValues(true);
+        applyPendingEvents();
+        return new ArrayList<>(typeIndex.keySet());
     }
 
     // Get all available edges
     public List<String> getAllEdges() {
-        return getUniqueValues(false);
+        applyPendingEvents();
+        return new ArrayList<>(edgeIndex.keySet());
     }
 
-    // Helper method to get unique values
-    private List<String> getUniqueValues(boolean isType) {
-        List<String> result = new ArrayList<>();
+    /**
+     * Returns the types that appeared or disappeared since the last call.
+     * Check hasType() to tell which; keys that came and went again are reported too.
+     */
+    public Set<String> drainChangedTypes() {
+        applyPendingEvents();
+        Set<String> changed = new LinkedHashSet<>(changedTypes);
+        changedTypes.clear();
+        return changed;
+    }
 
-        if (repo == null || repo.getAllVehicles() == null) return result;
+    /**
+     * Returns the edges that appeared or disappeared since the last call (see drainChangedTypes).
+     */
+    public Set<String> drainChangedEdges() {
+        applyPendingEvents();
+        Set<String> changed = new LinkedHashSet<>(changedEdges);
+        changedEdges.clear();
+        return changed;
+    }
 
-        for (VehicleWrap v : repo.getAllVehicles()) {
-            String value = isType ? v.getImageName() : v.getEdge();
-            if (value != null && !value.isEmpty() && !result.contains(value)) {
-                result.add(value);
-            }
+    public boolean hasType(String type) { return typeIndex.containsKey(type); }
+    public boolean hasEdge(String edge) { return edgeIndex.containsKey(edge); }
+
+    // --- Index Events (simulation thread) ---
+
+    @Override
+    public void onVehicleDeparted(int slot, String id, String type) {
+        pendingEvents.add(() -> depart(slot, id, type));
+    }
+
+    @Override
+    public void onEdgeChanged(int slot, String edge) {
+        pendingEvents.add(() -> changeEdge(slot, edge));
+    }
+
+    @Override
+    public void onVehicleArrived(int slot) {
+        pendingEvents.add(() -> arrive(slot));
+    }
+
+    // --- Index Maintenance (EDT) ---
+
+    private void applyPendingEvents() {
+        Runnable event;
+        while ((event = pendingEvents.poll()) != null) {
+            event.run();
+        }
+    }
+
+    private void depart(int slot, String id, String type) {
+        ensureCapacity(slot);
+        arrive(slot); // Slot reused without an arrival seen: drop the stale entry
+        slotId[slot] = id;
+        slotType[slot] = type;
+        if (type != null) typePos[slot] = add(typeIndex, type, slot, changedTypes);
+    }
+
+    private void changeEdge(int slot, String edge) {
+        if (slot >= slotId.length || slotId[slot] == null) return;
+        if (slotEdge[slot] != null) remove(edgeIndex, slotEdge[slot], slot, edgePos, changedEdges);
+        slotEdge[slot] = edge;
+        if (edge != null) edgePos[slot] = add(edgeIndex, edge, slot, changedEdges);
+    }
+
+    private void arrive(int slot) {
+        if (slot >= slotId.length || slotId[slot] == null) return;
+        if (slotType[slot] != null) remove(typeIndex, slotType[slot], slot, typePos, changedTypes);
+        if (slotEdge[slot] != null) remove(edgeIndex, slotEdge[slot], slot, edgePos, changedEdges);
+        slotId[slot] = null;
+        slotType[slot] = null;
+        slotEdge[slot] = null;
+    }
+
+    // Adds a slot to the set of a key and returns its position there
+    private static int add(Map<String, SlotSet> index, String key, int slot, Set<String> changed) {
+        SlotSet set = index.get(key);
+        if (set == null) {
+            set = new SlotSet();
+            index.put(key, set);
+            changed.add(key);
+        }
+        return set.add(slot);
+    }
+
+    // Removes a slot from its set in O(1); keys without vehicles disappear
+    private static void remove(Map<String, SlotSet> index, String key, int slot, int[] pos, Set<String> changed) {
+        SlotSet set = index.get(key);
+        int moved = set.removeAt(pos[slot]);
+        if (moved >= 0) pos[moved] = pos[slot];
+        if (set.size == 0) {
+            index.remove(key);
+            changed.add(key);
+        }
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot < slotId.length) return;
+        int capacity = Math.max(slot + 1, slotId.length * 2);
+        slotId = Arrays.copyOf(slotId, capacity);
+        slotType = Arrays.copyOf(slotType, capacity);
+        slotEdge = Arrays.copyOf(slotEdge, capacity);
+        typePos = Arrays.copyOf(typePos, capacity);
+        edgePos = Arrays.copyOf(edgePos, capacity);
+    }
+
+    /**
+     * Unordered set of slots with O(1) add and remove (swap with the last member).
+     */
+    private static final class SlotSet {
+        int[] members = new int[8];
+        int size = 0;
+
+        int add(int slot) {
+            if (size == members.length) members = Arrays.copyOf(members, size * 2);
+            members[size] = slot;
+            return size++;
+        }
+
+        // Returns the slot that moved into the freed position, or -1
+        int removeAt(int position) {
+            int last = members[--size];
+            if (position == size) return -1;
+            members[position] = last;
+            return last;
         }
-        return result;
     }
-}
\ No newline at end of file
+}
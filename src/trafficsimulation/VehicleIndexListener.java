@@ -0,0 +1,11 @@
+package trafficsimulation;
+
+/**
+ * Vehicle index changes reported by VehicleRepository. Called on the simulation thread;
+ * vehicles are identified by their state store slot.
+ */
+interface VehicleIndexListener {
+    void onVehicleDeparted(int slot, String id, String type); // Edge follows with onEdgeChanged
+    void onEdgeChanged(int slot, String edge);
+    void onVehicleArrived(int slot); // Before the slot is released
+}
@@ -0,0 +1,222 @@
+package trafficsimulation;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Conjunction of simple vehicle conditions, compiled into primitive comparisons.
+ *
+ * Syntax (conditions joined with "and", case-insensitive):
+ *   speed &lt; 2            speed, co2: one of &lt; &lt;= &gt; &gt;= = followed by a number
+ *   co2 &gt;= 5000
+ *   bbox 100,200,300,400   minX,minY,maxX,maxY in network coordinates
+ *   edge ^= gneE           edge ID starts with the prefix ("edge = id" for an exact match)
+ *   type = Red
+ *
+ * Numeric conditions become closed ranges (strict bounds are moved by one ulp), so the
+ * whole query is a handful of double comparisons per vehicle. The edge condition is
+ * turned into a boolean mask over the snapshot's edge dictionary once and then costs a
+ * single array lookup. Large fleets are evaluated in parallel chunks.
+ *
+ * A query is immutable apart from its edge mask cache; use one instance per thread.
+ */
+public class VehicleQuery {
+
+    // Below this many vehicles a plain loop is faster than forking
+    private static final int PARALLEL_THRESHOLD = 50_000;
+    private static final int CHUNK_SIZE = 8_192;
+
+    private final String text;
+
+    // --- Compiled Conditions (closed ranges) ---
+    private double minSpeed = Double.NEGATIVE_INFINITY;
+    private double maxSpeed = Double.POSITIVE_INFINITY;
+    private double minCo2 = Double.NEGATIVE_INFINITY;
+    private double maxCo2 = Double.POSITIVE_INFINITY;
+    private double minX = Double.NEGATIVE_INFINITY;
+    private double minY = Double.NEGATIVE_INFINITY;
+    private double maxX = Double.POSITIVE_INFINITY;
+    private double maxY = Double.POSITIVE_INFINITY;
+    private String edgePattern;   // null = any edge
+    private boolean edgePrefix;   // true: starts with, false: equals
+    private String type;          // null = any type
+
+    // --- Edge Mask Cache (per dictionary) ---
+    private String[] maskDictionary;
+    private int maskSize;
+    private boolean[] edgeMask;
+
+    private VehicleQuery(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses a query; throws IllegalArgumentException with a readable message on errors.
+     */
+    public static VehicleQuery parse(String text) {
+        VehicleQuery query = new VehicleQuery(text.trim());
+        if (query.text.isEmpty()) throw new IllegalArgumentException("Empty query");
+
+        for (String condition : query.text.split("(?i)\\s+and\\s+")) {
+            String[] parts = condition.trim().split("\\s+", 3);
+            if (parts.length < 2) throw new IllegalArgumentException("Incomplete condition: " + condition);
+            String field = parts[0].toLowerCase(Locale.ROOT);
+
+            switch (field) {
+                case "speed":
+                case "co2": {
+                    if (parts.length < 3) throw new IllegalArgumentException("Missing value: " + condition);
+                    double value = parseNumber(parts[2], condition);
+                    double[] range = field.equals("speed")
+                            ? new double[] {query.minSpeed, query.maxSpeed}
+                            : new double[] {query.minCo2, query.maxCo2};
+                    applyComparison(range, parts[1], value, condition);
+                    if (field.equals("speed")) {
+                        query.minSpeed = range[0];
+                        query.maxSpeed = range[1];
+                    } else {
+                        query.minCo2 = range[0];
+                        query.maxCo2 = range[1];
+                    }
+                    break;
+                }
+                case "bbox": {
+                    String[] values = condition.trim().substring(4).trim().split("\\s*,\\s*");
+                    if (values.length != 4) throw new IllegalArgumentException("bbox needs minX,minY,maxX,maxY: " + condition);
+                    query.minX = Math.max(query.minX, parseNumber(values[0], condition));
+                    query.minY = Math.max(query.minY, parseNumber(values[1], condition));
+                    query.maxX = Math.min(query.maxX, parseNumber(values[2], condition));
+                    query.maxY = Math.min(query.maxY, parseNumber(values[3], condition));
+                    break;
+                }
+                case "edge":
+                    if (parts.length < 3) throw new IllegalArgumentException("Missing edge: " + condition);
+                    if (!parts[1].equals("^=") && !parts[1].equals("=")) {
+                        throw new IllegalArgumentException("Use 'edge ^= prefix' or 'edge = id': " + condition);
+                    }
+                    query.edgePattern = parts[2];
+                    query.edgePrefix = parts[1].equals("^=");
+                    break;
+                case "type":
+                    if (parts.length < 3 || !parts[1].equals("=")) {
+                        throw new IllegalArgumentException("Use 'type = name': " + condition);
+                    }
+                    query.type = parts[2];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown field '" + parts[0] + "' (speed, co2, bbox, edge, type)");
+            }
+        }
+        return query;
+    }
+
+    private static double parseNumber(String value, String condition) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number '" + value + "' in: " + condition);
+        }
+    }
+
+    // Narrows the closed range [range[0], range[1]] by one comparison
+    private static void applyComparison(double[] range, String op, double value, String condition) {
+        switch (op) {
+            case "<":  range[1] = Math.min(range[1], Math.nextDown(value)); break;
+            case "<=": range[1] = Math.min(range[1], value); break;
+            case ">":  range[0] = Math.max(range[0], Math.nextUp(value)); break;
+            case ">=": range[0] = Math.max(range[0], value); break;
+            case "=":
+                range[0] = Math.max(range[0], value);
+                range[1] = Math.min(range[1], value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operator '" + op + "' in: " + condition);
+        }
+    }
+
+    // --- Evaluation ---
+
+    /**
+     * Returns the indices of all vehicles of the snapshot that match.
+     */
+    public int[] evaluate(SimulationSnapshot snap) {
+        int n = snap.getVehicleCount();
+        boolean[] mask = compileEdgeMask(snap);
+
+        if (n < PARALLEL_THRESHOLD) {
+            int[] result = new int[Math.min(n, 64)];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                if (!test(snap, i, mask)) continue;
+                if (count == result.length) result = Arrays.copyOf(result, count * 2);
+                result[count++] = i;
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        // Large fleets: every chunk writes its own hits, then they are compacted in order
+        boolean[] hit = new boolean[n];
+        IntStream.range(0, (n + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach(chunk -> {
+            int end = Math.min(n, (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                hit[i] = test(snap, i, mask);
+            }
+        });
+        int count = 0;
+        for (boolean h : hit) if (h) count++;
+        int[] result = new int[count];
+        count = 0;
+        for (int i = 0; i < n; i++) if (hit[i]) result[count++] = i;
+        return result;
+    }
+
+    /**
+     * Tests a single vehicle of the snapshot.
+     */
+    public boolean matches(SimulationSnapshot snap, int i) {
+        return test(snap, i, compileEdgeMask(snap));
+    }
+
+    private boolean test(SimulationSnapshot snap, int i, boolean[] mask) {
+        double speed = snap.getSpeed(i);
+        if (speed < minSpeed || speed > maxSpeed) return false;
+        double co2 = snap.getCo2(i);
+        if (co2 < minCo2 || co2 > maxCo2) return false;
+        double x = snap.getX(i);
+        double y = snap.getY(i);
+        if (x < minX || x > maxX || y < minY || y > maxY) return false;
+        if (mask != null) {
+            int edge = snap.getEdgeIndex(i);
+            if (edge < 0 || edge >= mask.length || !mask[edge]) return false;
+        }
+        return type == null || type.equals(snap.getImageName(i));
+    }
+
+    /**
+     * Evaluates the edge condition once per dictionary entry. The dictionary is append-only,
+     * so only entries added since the last call are tested.
+     */
+    private boolean[] compileEdgeMask(SimulationSnapshot snap) {
+        if (edgePattern == null) return null;
+        String[] names = snap.getEdgeNames();
+        if (names != maskDictionary) {
+            // New run or grown dictionary array: the old prefix is still valid if it is the same store
+            boolean samePrefix = maskDictionary != null && maskSize <= names.length
+                    && (maskSize == 0 || names[maskSize - 1] == maskDictionary[maskSize - 1]);
+            edgeMask = samePrefix ? Arrays.copyOf(edgeMask, names.length) : new boolean[names.length];
+            maskSize = samePrefix ? maskSize : 0;
+            maskDictionary = names;
+        }
+        while (maskSize < names.length && names[maskSize] != null) {
+            String edge = names[maskSize];
+            edgeMask[maskSize++] = edgePrefix ? edge.startsWith(edgePattern) : edge.equals(edgePattern);
+        }
+        return edgeMask;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
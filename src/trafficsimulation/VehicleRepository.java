@@ -3,14 +3,24 @@ package trafficsimulation;
 import de.tudresden.sumo.cmd.Edge;
 import de.tudresden.sumo.cmd.Route;
 import de.tudresden.sumo.cmd.Vehicle;
-import de.tudresden.sumo.objects.SumoColor;
+import de.tudresden.sumo.config.Constants;
+import de.tudresden.sumo.objects.SumoPosition2D;
+import de.tudresden.sumo.objects.SumoPrimitive;
 import de.tudresden.sumo.objects.SumoStringList;
+import de.tudresden.sumo.subscription.ResponseType;
+import de.tudresden.sumo.subscription.SubscribtionVariable;
+import de.tudresden.sumo.subscription.SubscriptionObject;
+import de.tudresden.sumo.subscription.VariableSubscription;
+import de.tudresden.sumo.util.Observable;
+import de.tudresden.sumo.util.Observer;
 import it.polito.appeal.traci.SumoTraciConnection;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import de.tudresden.sumo.cmd.Simulation;
+import java.util.Set;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,15 +28,52 @@ import org.apache.logging.log4j.Logger;
 /**
  * Manages the lifecycle of vehicles in the simulation.
  * FIXED: Handles Unique IDs safely and calculates statistics.
+ *
+ * Vehicle state is not polled. Every vehicle subscribes once on departure and
+ * SUMO pushes the subscribed values with each time step response, which this
+ * repository receives as an {@link Observer} of the connection.
  */
-public class VehicleRepository {
+public class VehicleRepository implements Observer {
     
+    // Subscriptions stay active for the whole run (SUMO drops them on arrival)
+    private static final double SUBSCRIPTION_END = Double.MAX_VALUE;
+
+    // Variables pushed by SUMO for every tracked vehicle
+    private static final int[] VEHICLE_VARIABLES = {
+            Constants.VAR_SPEED,
+            Constants.VAR_POSITION,
+            Constants.VAR_ANGLE,
+            Constants.VAR_ROAD_ID,
+            Constants.VAR_CO2EMISSION
+    };
+
     // --- Fields ---
     private ArrayList<VehicleWrap> vehicles;
     private SumoTraciConnection conn;
     private int vehicleCounter = 0; // Changed name to indicate it's a counter
+    private int activeVehicleCount = 0; // All running vehicles in SUMO (tracked or not)
     private Random rand; 
 
+    // Primitive state of all tracked vehicles (VehicleWrap is a view on it)
+    private VehicleStateStore store = new VehicleStateStore();
+
+    // ID index over 'vehicles' (lookups, unique IDs and subscription routing)
+    private Map<String, VehicleWrap> vehiclesById = new HashMap<>();
+
+    // --- Insertion ---
+    private String[] eligibleEdges; // Cached non-internal edges of the network
+    private Set<String> createdRoutes = new HashSet<>(); // Start edges that already have a route
+    private List<PendingInsertion> pendingInsertions = new ArrayList<>();
+
+    // Departed/Arrived lists delivered with the latest step response
+    private SumoStringList departedIds = new SumoStringList();
+    private SumoStringList arrivedIds = new SumoStringList();
+    private double simulationTime = 0.0; // Seconds, delivered with the same response
+
+    // Departed vehicles (on the road) and index listeners; simulation thread only
+    private Set<String> departed = new HashSet<>();
+    private List<VehicleIndexListener> indexListeners = new ArrayList<>();
+
     private static final Logger logger = LogManager.getLogger(VehicleRepository.class);
 
     // --- Constructor ---
@@ -35,179 +82,329 @@ public class VehicleRepository {
         this.vehicles = new ArrayList<>();
         this.vehicleCounter = 0;
         this.rand = new Random();
+        subscribeSimulation();
+    }
+
+    /**
+     * Registers this repository as observer and subscribes to the
+     * departed/arrived lists and the simulation time, so that no per-step
+     * ID or time polling is needed.
+     */
+    private void subscribeSimulation() {
+        try {
+            conn.addObserver(this);
+
+            VariableSubscription vs = new VariableSubscription(
+                    SubscribtionVariable.simulation, 0, SUBSCRIPTION_END, "");
+            vs.addCommand(Constants.VAR_DEPARTED_VEHICLES_IDS);
+            vs.addCommand(Constants.VAR_ARRIVED_VEHICLES_IDS);
+            vs.addCommand(Constants.VAR_TIME);
+            conn.do_subscription(vs);
+        } catch (Exception e) {
+            logger.error("Failed to subscribe to simulation variables", e);
+        }
+    }
+
+    /**
+     * Subscribes to all variables we use for one vehicle.
+     * Must be called after the vehicle has departed (SUMO rejects unknown IDs).
+     */
+    private void subscribeVehicle(VehicleWrap car) {
+        try {
+            VariableSubscription vs = new VariableSubscription(
+                    SubscribtionVariable.vehicle, 0, SUBSCRIPTION_END, car.getID());
+            for (int variable : VEHICLE_VARIABLES) {
+                vs.addCommand(variable);
+            }
+            conn.do_subscription(vs);
+        } catch (Exception e) {
+            logger.error("Failed to subscribe to vehicle {}", car.getID(), e);
+        }
+    }
+
+    /**
+     * Receives subscription results while SUMO processes a time step.
+     * Only stores the values; list changes are applied in updateVehicles().
+     */
+    @Override
+    public void update(Observable observable, SubscriptionObject so) {
+        if (so.object == null) return;
+
+        if (so.response == ResponseType.SIM_VARIABLE) {
+            if (so.variable == Constants.VAR_DEPARTED_VEHICLES_IDS) {
+                departedIds = (SumoStringList) so.object;
+            } else if (so.variable == Constants.VAR_ARRIVED_VEHICLES_IDS) {
+                arrivedIds = (SumoStringList) so.object;
+            } else if (so.variable == Constants.VAR_TIME) {
+                simulationTime = primitiveDouble(so);
+            }
+            return;
+        }
+
+        if (so.response != ResponseType.VEHICLE_VARIABLE) return;
+
+        VehicleWrap car = vehiclesById.get(so.id);
+        if (car == null) return;
+        int slot = car.getSlot();
+
+        // Values are written straight into the primitive store (no allocation)
+        switch (so.variable) {
+            case Constants.VAR_SPEED:
+                store.setSpeed(slot, primitiveDouble(so));
+                break;
+            case Constants.VAR_POSITION:
+                SumoPosition2D pos = (SumoPosition2D) so.object;
+                store.setPosition(slot, pos.x, pos.y);
+                break;
+            case Constants.VAR_ANGLE:
+                store.setAngle(slot, primitiveDouble(so));
+                break;
+            case Constants.VAR_ROAD_ID:
+                String edge = (String) ((SumoPrimitive) so.object).val;
+                int before = store.getEdgeIndex(slot);
+                store.setEdge(slot, edge);
+                if (store.getEdgeIndex(slot) != before) {
+                    for (VehicleIndexListener l : indexListeners) l.onEdgeChanged(slot, edge);
+                }
+                break;
+            case Constants.VAR_CO2EMISSION:
+                store.setCo2(slot, primitiveDouble(so));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static double primitiveDouble(SubscriptionObject so) {
+        return (Double) ((SumoPrimitive) so.object).val;
     }
 
 
 
     /**
      * Adds 'n' new vehicles safely.
-     * Uses 'synchronized' to prevent errors during Stress Tests.
+     * The vehicles are tracked immediately, but the insertion commands are only
+     * queued; flushInsertions() sends them in one batch at the next step boundary.
      */
     public synchronized void addVehicle(int n, String type, String imageName) {
         try {
-            // Fetch all available edges (roads)
-            SumoStringList allEdges = (SumoStringList) conn.do_job_get(Edge.getIDList());
-
-            if (allEdges.isEmpty()) return;
+            // Non-internal edges, fetched once per network
+            String[] edges = getEligibleEdges();
+            if (edges.length < 2) return;
 
             for (int i = 0; i < n; i++) {
 
-                // Generate Unique ID
+                // Generate Unique ID (local counter, the "car_" prefix is ours alone)
                 String carId;
                 do {
                     vehicleCounter++;
                     carId = "car_" + vehicleCounter;
-                } while (idExists(carId)); // Keep trying until we find a free ID
+                } while (vehiclesById.containsKey(carId));
 
                 // --- 2. Select Random Start/End ---
-                String startEdge = getRandomEdge(allEdges);
-                while (startEdge.startsWith(":")) { // Avoid junctions
-                    startEdge = getRandomEdge(allEdges);
+                String startEdge = edges[rand.nextInt(edges.length)];
+                String endEdge = edges[rand.nextInt(edges.length)];
+                while (endEdge.equals(startEdge)) {
+                    endEdge = edges[rand.nextInt(edges.length)];
                 }
 
-                String endEdge = getRandomEdge(allEdges);
-                while (endEdge.startsWith(":") || endEdge.equals(startEdge)) {
-                    endEdge = getRandomEdge(allEdges);
-                }
-
-                // --- 3. Create Route ---
-                String newRouteID = "route_" + carId;
-                SumoStringList edgesForRoute = new SumoStringList();
-                edgesForRoute.add(startEdge);
-                conn.do_job_set(Route.add(newRouteID, edgesForRoute));
-
-                // --- 4. Add to SUMO ---
-                conn.do_job_set(Vehicle.addFull(
-                        carId, newRouteID, type, "now", "0", "0", "0", "current", "max", "current", "", "", "", 0, 0)
-                );
-
-                conn.do_job_set(Vehicle.changeTarget(carId, endEdge));
-
-                // --- 5. Add to Java List ---
-                VehicleWrap newCar = new VehicleWrap(carId, conn, imageName);
+                // --- 3. Add to Java List & insertion queue ---
+                VehicleWrap newCar = new VehicleWrap(carId, imageName, store, store.allocate());
                 vehicles.add(newCar);
+                vehiclesById.put(carId, newCar);
+                pendingInsertions.add(new PendingInsertion(newCar, type, startEdge, endEdge));
 
-                logger.info("Added unique vehicle: {}", carId);
+                logger.debug("Queued vehicle: {}", carId);
             }
+            logger.info("Queued {} vehicles for insertion ({} pending)", n, pendingInsertions.size());
         } catch (Exception e) {
             logger.error("Failed to add vehicle:", e);
         }
     }
 
     /**
-     * Checks if ID exists in Java List OR in SUMO.
+     * Sends all queued insertions to SUMO. Called once per step, right before do_timestep(),
+     * so that thousands of vehicles enter at a single step boundary.
+     * The connection lock is held for the whole batch, so no other command interleaves.
      */
-    private boolean idExists(String id) {
-        // Check local list
-        for (VehicleWrap v : vehicles) {
-            if (v.getID().equals(id)) return true;
+    public synchronized void flushInsertions() {
+        if (pendingInsertions.isEmpty()) return;
+
+        int added = 0;
+        synchronized (conn) {
+            for (PendingInsertion p : pendingInsertions) {
+                String carId = p.car.getID();
+                try {
+                    // One single-edge route per start edge, shared by all vehicles starting there
+                    String routeId = "route_" + p.startEdge;
+                    if (createdRoutes.add(p.startEdge)) {
+                        SumoStringList edgesForRoute = new SumoStringList();
+                        edgesForRoute.add(p.startEdge);
+                        conn.do_job_set(Route.add(routeId, edgesForRoute));
+                    }
+
+                    conn.do_job_set(Vehicle.addFull(
+                            carId, routeId, p.type, "now", "0", "0", "0", "current", "max", "current", "", "", "", 0, 0)
+                    );
+                    conn.do_job_set(Vehicle.changeTarget(carId, p.endEdge));
+                    added++;
+                } catch (Exception e) {
+                    // Forget the vehicle again, it will never depart
+                    logger.error("Failed to insert vehicle {}:", carId, e);
+                    vehiclesById.remove(carId);
+                    vehicles.remove(p.car);
+                    store.release(p.car.getSlot());
+                    p.car.detach();
+                }
+            }
         }
-        // Check SUMO (Safety check)
-        try {
-            SumoStringList sumoList = (SumoStringList) conn.do_job_get(Vehicle.getIDList());
-            if (sumoList.contains(id)) return true;
-        } catch (Exception e) {
-            return true; // If error, assume ID is taken to be safe
+        logger.info("Inserted {} of {} queued vehicles", added, pendingInsertions.size());
+        pendingInsertions.clear();
+    }
+
+    /**
+     * Uses the non-internal edges of an already parsed network as insertion table.
+     */
+    public synchronized void setEligibleEdges(String[] edges) {
+        this.eligibleEdges = edges;
+    }
+
+    /**
+     * Returns all edges a vehicle may start or end on (no internal junction edges).
+     * Taken from the parsed network, or built once from SUMO's edge list and cached.
+     */
+    private String[] getEligibleEdges() throws Exception {
+        if (eligibleEdges == null) {
+            SumoStringList allEdges = (SumoStringList) conn.do_job_get(Edge.getIDList());
+            List<String> result = new ArrayList<>();
+            for (String edge : allEdges) {
+                if (!edge.startsWith(":")) result.add(edge); // Avoid junctions
+            }
+            eligibleEdges = result.toArray(new String[0]);
+            logger.info("Cached {} eligible edges for vehicle insertion", eligibleEdges.length);
         }
-        return false;
+        return eligibleEdges;
     }
 
     /**
      * Syncs Java objects with SUMO.
      * Also removes cars that have finished their route.
+     * The vehicle values themselves were already written by update() during do_timestep(),
+     * so this only handles departures and arrivals without any extra TraCI queries.
      */
-        public void updateVehicles() {
+    public void updateVehicles() {
         try {
-            // Get list of currently active vehicles in SUMO
-            SumoStringList activeIds = (SumoStringList) conn.do_job_get(Vehicle.getIDList());
-            
-            // Get list of vehicles that have arrived at their destination
-            SumoStringList arrivedIds = (SumoStringList) conn.do_job_get(de.tudresden.sumo.cmd.Simulation.getArrivedIDList());
-
-            // Iterate safely (works with CopyOnWriteArrayList)
-            for (VehicleWrap car : vehicles) {
-
-                // 1. If car has arrived/left the simulation -> Remove it
-                if (arrivedIds.contains(car.getID())) {
-                    vehicles.remove(car);
-                    continue;
-                }
-
-                // 2. If car is actively running -> Update it
-                if (activeIds.contains(car.getID())) {
-                    car.updateVehicle();
-
-                    // Debugging: TypeID
-                    try {
-                        String typeID = (String) conn.do_job_get(Vehicle.getTypeID(car.getID()));
-                        System.out.println("Auto " + car.getID() + " - Type: " + typeID + " - ImageName: " + car.getImageName());
-                    } catch (Exception e) {
-                        System.out.println("Fehler beim Type holen: " + e.getMessage());
+            // 1. Subscribe cars that entered the network in this step
+            for (String id : departedIds) {
+                VehicleWrap car = vehiclesById.get(id);
+                if (car != null) {
+                    subscribeVehicle(car);
+                    departed.add(id);
+                    for (VehicleIndexListener l : indexListeners) {
+                        l.onVehicleDeparted(car.getSlot(), id, car.getImageName());
                     }
+                }
+            }
 
-                    // Update Edge for Filter
-                    try {
-                        String edge = (String) conn.do_job_get(Vehicle.getRoadID(car.getID()));
-                        car.setEdge(edge);
-                        System.out.println("Auto " + car.getID() + " - Edge: " + edge);
-                    } catch (Exception e) {
-                        System.out.println("Fehler beim Edge holen: " + e.getMessage());
+            // 2. If car has arrived/left the simulation -> Remove it (one pass over the list)
+            if (!arrivedIds.isEmpty()) {
+                Set<String> arrived = new HashSet<>();
+                for (String id : arrivedIds) {
+                    VehicleWrap car = vehiclesById.remove(id);
+                    if (car != null) {
+                        if (departed.remove(id)) {
+                            for (VehicleIndexListener l : indexListeners) l.onVehicleArrived(car.getSlot());
+                        }
+                        store.release(car.getSlot());
+                        car.detach();
+                        arrived.add(id);
                     }
                 }
-                
-                // 3. If car is neither active nor arrived, it is in the Queue -> Keep it!
+                if (!arrived.isEmpty()) {
+                    vehicles.removeIf(car -> arrived.contains(car.getID()));
+                }
             }
+
+            // 3. Cars that have not departed yet are in the Queue -> Keep them!
+            activeVehicleCount += departedIds.size() - arrivedIds.size();
+            departedIds = new SumoStringList();
+            arrivedIds = new SumoStringList();
         } catch (Exception e) { 
             logger.error("Error updating vehicles", e);
         }
     }
 
+    /**
+     * Registers an index listener and replays the vehicles already on the road to it.
+     * Must be called on the simulation thread.
+     */
+    public void addIndexListener(VehicleIndexListener listener) {
+        indexListeners.add(listener);
+        for (VehicleWrap car : vehicles) {
+            if (!departed.contains(car.getID())) continue;
+            listener.onVehicleDeparted(car.getSlot(), car.getID(), car.getImageName());
+            String edge = store.getEdgeName(store.getEdgeIndex(car.getSlot()));
+            if (edge != null) listener.onEdgeChanged(car.getSlot(), edge);
+        }
+    }
+
     public int getvehicleCounter() {
     	return vehicleCounter;
     	}
 
+    /**
+     * Simulation time in seconds after the last step (from the subscription).
+     */
+    public double getSimulationTime() {
+        return simulationTime;
+    }
+
+    /**
+     * Number of running vehicles in SUMO, derived from the departed/arrived subscription.
+     */
+    public int getActiveVehicleCount() {
+        return activeVehicleCount;
+    }
+
     // --- Statistics (Required for Project) ---
 
     public double getAverageSpeed() {
         if (vehicles.isEmpty()) return 0.0;
         double totalSpeed = 0;
         for (VehicleWrap v : vehicles) {
-            totalSpeed += v.getSpeed();
+            totalSpeed += store.getSpeed(v.getSlot());
         }
         return totalSpeed / vehicles.size();
     }
 
-    // --- Helper Methods ---
-
-    private String getRandomEdge(SumoStringList edges) {
-        return edges.get(rand.nextInt(edges.size()));
-    }
-
     // --- Getters ---
+    public VehicleWrap findVehicle(String id) {
+        return vehiclesById.get(id);
+    }
     public List<VehicleWrap> getAllVehicles() {
         return new ArrayList<>(vehicles);
     }
     public ArrayList<VehicleWrap> getList() { 
         return vehicles; 
     }
+    public VehicleStateStore getStateStore() {
+        return store;
+    }
 
-
-    public double getTotalCo2Emission() {
-        double total = 0.0;
-
-        try {
-            for (VehicleWrap v : vehicles) {
-               double val= v.getCo2Emission();
-                System.out.println(
-                      //  "TEST CO2 | Step vehicle " + v.getID() + " = " + val + " mg/s"
-                );
-                total += v.getCo2Emission();
-            }
-        } catch (Exception e) {
-            logger.error("Failed to calculate CO2 emission", e);
+    /**
+     * A vehicle waiting to be sent to SUMO by flushInsertions().
+     */
+    private static class PendingInsertion {
+        final VehicleWrap car;
+        final String type;
+        final String startEdge;
+        final String endEdge;
+
+        PendingInsertion(VehicleWrap car, String type, String startEdge, String endEdge) {
+            this.car = car;
+            this.type = type;
+            this.startEdge = startEdge;
+            this.endEdge = endEdge;
         }
-
-        return total;
     }
 }
-
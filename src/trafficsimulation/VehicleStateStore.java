@@ -0,0 +1,153 @@
+package trafficsimulation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the dynamic state of all tracked vehicles in parallel primitive arrays.
+ * Each vehicle owns a stable int slot for its whole lifetime; slots of arrived
+ * vehicles go to a free list and are reused, so the arrays only grow with the
+ * peak fleet size and updates never allocate.
+ * Edges are stored as an index into an append-only edge dictionary.
+ */
+public class VehicleStateStore {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Edge index of a vehicle that has not reported a road yet
+    public static final int NO_EDGE = -1;
+
+    // --- Vehicle Columns (indexed by slot) ---
+    private double[] x;
+    private double[] y;
+    private double[] speed;
+    private double[] angle;
+    private double[] co2;
+    private int[] edgeIndex;
+    private boolean[] hasPosition;
+
+    // --- Slot Management ---
+    private int[] freeSlots;
+    private int freeCount = 0;
+    private int slotLimit = 0; // Slots [0, slotLimit) have been handed out at least once
+
+    // --- Edge Dictionary ---
+    private final Map<String, Integer> edgeIds = new HashMap<>();
+    private String[] edgeNames = new String[INITIAL_CAPACITY];
+    private int edgeCount = 0;
+
+    public VehicleStateStore() {
+        x = new double[INITIAL_CAPACITY];
+        y = new double[INITIAL_CAPACITY];
+        speed = new double[INITIAL_CAPACITY];
+        angle = new double[INITIAL_CAPACITY];
+        co2 = new double[INITIAL_CAPACITY];
+        edgeIndex = new int[INITIAL_CAPACITY];
+        hasPosition = new boolean[INITIAL_CAPACITY];
+        freeSlots = new int[INITIAL_CAPACITY];
+    }
+
+    // --- Slot Lifecycle ---
+
+    /**
+     * Reserves a slot for a new vehicle (reuses a freed one if possible).
+     */
+    public int allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotLimit == x.length) grow(x.length * 2);
+            slot = slotLimit++;
+        }
+        x[slot] = 0;
+        y[slot] = 0;
+        speed[slot] = 0;
+        angle[slot] = 0;
+        co2[slot] = 0;
+        edgeIndex[slot] = NO_EDGE;
+        hasPosition[slot] = false;
+        return slot;
+    }
+
+    /**
+     * Returns a slot to the free list once its vehicle has left the simulation.
+     */
+    public void release(int slot) {
+        hasPosition[slot] = false;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        angle = Arrays.copyOf(angle, capacity);
+        co2 = Arrays.copyOf(co2, capacity);
+        edgeIndex = Arrays.copyOf(edgeIndex, capacity);
+        hasPosition = Arrays.copyOf(hasPosition, capacity);
+    }
+
+    // --- Setters ---
+
+    public void setPosition(int slot, double px, double py) {
+        x[slot] = px;
+        y[slot] = py;
+        hasPosition[slot] = true;
+    }
+    public void setSpeed(int slot, double value) {
+        speed[slot] = value;
+    }
+    public void setAngle(int slot, double value) {
+        angle[slot] = value;
+    }
+    public void setCo2(int slot, double value) {
+        // Sumo Overflow-Protection
+        co2[slot] = value < 0 ? 0.0 : value;
+    }
+    public void setEdge(int slot, String edge) {
+        edgeIndex[slot] = internEdge(edge);
+    }
+
+    /**
+     * Maps an edge ID to its dictionary index, adding it on first use.
+     */
+    public int internEdge(String edge) {
+        if (edge == null) return NO_EDGE;
+        Integer idx = edgeIds.get(edge);
+        if (idx != null) return idx;
+
+        if (edgeCount == edgeNames.length) {
+            edgeNames = Arrays.copyOf(edgeNames, edgeNames.length * 2);
+        }
+        edgeNames[edgeCount] = edge;
+        edgeIds.put(edge, edgeCount);
+        return edgeCount++;
+    }
+
+    // --- Getters ---
+
+    public double getX(int slot) { return x[slot]; }
+    public double getY(int slot) { return y[slot]; }
+    public double getSpeed(int slot) { return speed[slot]; }
+    public double getAngle(int slot) { return angle[slot]; }
+    public double getCo2(int slot) { return co2[slot]; }
+    public int getEdgeIndex(int slot) { return edgeIndex[slot]; }
+    public boolean hasPosition(int slot) { return hasPosition[slot]; }
+
+    public String getEdgeName(int index) {
+        return index == NO_EDGE ? null : edgeNames[index];
+    }
+    public int getEdgeCount() { return edgeCount; }
+
+    /**
+     * The dictionary array itself (no copy). Entries below getEdgeCount() never change,
+     * so it can be shared with snapshots; entries above it are null.
+     */
+    String[] getEdgeNames() { return edgeNames; }
+    public int getSlotLimit() { return slotLimit; }
+}
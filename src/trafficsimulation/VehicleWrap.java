@@ -1,102 +1,71 @@
 package trafficsimulation;
 
-import de.tudresden.sumo.cmd.Vehicle;
-import de.tudresden.sumo.objects.SumoPosition2D;
-import it.polito.appeal.traci.SumoTraciConnection;
-
-import java.awt.*;
 import java.awt.geom.Point2D;
 
 /**
  * A Wrapper class for a SUMO Vehicle.
- * Stores the vehicle's ID, its connection, and its current physical state (Position, Speed, Angle).
+ * Stores the vehicle's ID and a view on its current physical state (Position, Speed, Angle),
+ * which lives in the VehicleStateStore slot assigned by the VehicleRepository.
  * Also holds the 'imageName' to determine which car photo to draw (e.g., Ferrari, Bugatti).
  */
 public class VehicleWrap {
 
     // --- Static Properties (Do not change) ---
     private final String id;
-    private final SumoTraciConnection conn;
     private final String imageName; // The visual type (e.g., "ferrari")
 
-    // --- Dynamic Properties (Updated every step) ---
-    private double speed;
-    private Point2D.Double position;
-    private double angle;
-
-    private String color;
-    private String edge;
-    private double x;
-    private double y;
+    // --- State Location ---
+    private final VehicleStateStore store;
+    private int slot; // -1 once the vehicle left the simulation
 
     // --- Constructor ---
     public VehicleWrap(String id) {
-        this.id = id;
-        this.conn = null;
-        this.imageName = "";
+        this(id, "", null, -1);
     }
 
-    public VehicleWrap(String id, SumoTraciConnection conn, String imageName) {
+    public VehicleWrap(String id, String imageName, VehicleStateStore store, int slot) {
         this.id = id;
-        this.conn = conn;
         this.imageName = imageName;
-        updateVehicle(); // Fetch initial state immediately
+        this.store = store;
+        this.slot = slot;
     }
 
-    // --- Logic Methods ---
-
     /**
-     * Communicates with SUMO to get the latest speed, position, and angle.
+     * Returns the current CO2 emission of this vehicle (mg/s).
      */
-    public void updateVehicle() {
-        try {
-            // 1. Get Speed
-            this.speed = (double) conn.do_job_get(Vehicle.getSpeed(id));
-
-            // 2. Get Position (X, Y)
-            SumoPosition2D pos2D = (SumoPosition2D) conn.do_job_get(Vehicle.getPosition(id));
-            this.position = new Point2D.Double(pos2D.x, pos2D.y);
-
-            // 3. Get Rotation Angle
-            this.angle = (double) conn.do_job_get(Vehicle.getAngle(id));
-
-        } catch (Exception e) {
-            // If vehicle leaves the simulation, this might fail (Expected behavior)
-            // e.printStackTrace(); 
-        }
+    public double getCo2Emission() {
+        return isAttached() ? store.getCo2(slot) : 0.0;
     }
 
     /**
-     * Returns the current CO2 emission of this vehicle (mg/s).
+     * Called by the repository when the slot is handed back to the store.
      */
-    public double getCo2Emission() {
-        try {
-            double val= (double) conn.do_job_get(Vehicle.getCO2Emission(id));
-            // Sumo Overflow-Protection
-            if (val < 0) {
-                return 0.0;
-            }
+    void detach() {
+        this.slot = -1;
+    }
 
-            return val;
-        } catch (Exception e) {
-            return 0.0;
-        }
+    private boolean isAttached() {
+        return store != null && slot >= 0;
     }
 
 
     // --- Getters ---
 
+    /**
+     * Returns a new point with the current position, or null before the first update.
+     */
     public Point2D.Double getPosition() {
-        return position;
+        if (!isAttached() || !store.hasPosition(slot)) return null;
+        return new Point2D.Double(store.getX(slot), store.getY(slot));
     }
     public String getID() {
         return id;
     }
     public double getSpeed() {
-        return speed;
+        return isAttached() ? store.getSpeed(slot) : 0.0;
     }
     public double getAngle() {
-        return angle;
+        return isAttached() ? store.getAngle(slot) : 0.0;
     }
     public String getImageName() {
         return imageName;
@@ -104,21 +73,16 @@ public class VehicleWrap {
     public String getId() {
         return id;
     }
-    public String getColor() {
-        return color;
-    }
     public String getEdge() {
-        return edge;
+        return isAttached() ? store.getEdgeName(store.getEdgeIndex(slot)) : null;
     }
     public double getX() {
-        return x;
+        return isAttached() ? store.getX(slot) : 0.0;
     }
     public double getY() {
-        return y;
+        return isAttached() ? store.getY(slot) : 0.0;
     }
-
-    // --- Setters ---
-    public void setEdge(String edge) {
-        this.edge = edge;
+    int getSlot() {
+        return slot;
     }
 }
\ No newline at end of file